@@ -0,0 +1,66 @@
+package com.beefsoft.giphyapi.benchmark;
+
+import com.beefsoft.giphyapi.utils.FirstRequestBenchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Runs all the benchmarks with the GC profiler, so the allocation rate is
+ * reported with the throughput, and stores the results as JSON in
+ * "benchmark/results" with the date in the name, to compare the runs over
+ * time. The first argument, optional, is a regexp to run only some
+ * benchmarks.
+ * <p>
+ * The cold start benchmarks, like {@link FirstRequestBenchmark}, are run
+ * apart with the forks and iterations of their annotations. With the options
+ * of the other benchmarks they would be measured in a warm JVM.
+ *
+ * @author Marcos Trujillo
+ */
+public class BenchmarkRunner {
+    private static final String RESULTS_DIRECTORY = "benchmark/results";
+    private static final String ALL_BENCHMARKS = "com\\.beefsoft\\.giphyapi\\..*Benchmark";
+    private static final String COLD_START_BENCHMARKS = FirstRequestBenchmark.class.getName()
+            .replace(".", "\\.");
+
+    public static void main(String[] args) throws RunnerException {
+        File results = new File(System.getProperty("giphy.results", RESULTS_DIRECTORY));
+        results.mkdirs();
+        String date = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date());
+
+        String include = args.length > 0 ? args[0] : ALL_BENCHMARKS;
+
+        Options options = new OptionsBuilder()
+                .include(include)
+                .exclude(COLD_START_BENCHMARKS)
+                .addProfiler(GCProfiler.class)
+                .forks(1)
+                .warmupIterations(5)
+                .measurementIterations(10)
+                .resultFormat(ResultFormatType.JSON)
+                .result(new File(results, "jmh-" + date + ".json").getPath())
+                .build();
+        new Runner(options).run();
+
+        if (!Pattern.compile(include).matcher(FirstRequestBenchmark.class.getName()).find())
+            return;
+        Options coldStart = new OptionsBuilder()
+                .include(COLD_START_BENCHMARKS)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(new File(results, "jmh-cold-" + date + ".json").getPath())
+                .build();
+        new Runner(coldStart).run();
+    }
+}
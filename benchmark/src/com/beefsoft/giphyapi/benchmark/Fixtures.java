@@ -0,0 +1,46 @@
+package com.beefsoft.giphyapi.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Recorded responses used by the benchmarks. The directory is read from the
+ * "giphy.fixtures" system property, by default "benchmark/fixtures".
+ *
+ * @author Marcos Trujillo
+ */
+public final class Fixtures {
+    public static final String CHARSET = "UTF-8";
+
+    private Fixtures() {
+    }
+
+    /**
+     * Returns the recent gifs response with the number of gifs indicated
+     *
+     * @param items 10, 25 or 100
+     * @throws IOException
+     */
+    public static byte[] recentGifs(int items) throws IOException {
+        File directory = new File(System.getProperty("giphy.fixtures", "benchmark/fixtures"));
+        return read(new File(directory, "recent_" + items + ".json"));
+    }
+
+    private static byte[] read(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream((int) file.length());
+            byte[] buffer = new byte[4096];
+            int length;
+            while ((length = in.read(buffer)) != -1) {
+                out.write(buffer, 0, length);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
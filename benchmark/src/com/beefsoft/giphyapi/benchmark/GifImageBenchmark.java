@@ -0,0 +1,83 @@
+package com.beefsoft.giphyapi.benchmark;
+
+import com.beefsoft.giphyapi.data.GiphyInfo;
+import com.beefsoft.giphyapi.data.GiphyInfo.GifImage;
+import com.beefsoft.giphyapi.data.GiphyInfo.GifInfo;
+import com.beefsoft.giphyapi.utils.FetchInfoTask;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Access patterns of the {@link GifImage} getters over a page of 100 gifs: a
+ * list binding the size of every tile, a layout reading the size several
+ * times and the raw fields as reference.
+ *
+ * @author Marcos Trujillo
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class GifImageBenchmark {
+    private GifImage[] mImages;
+
+    @Setup
+    public void setUp() throws IOException {
+        GiphyInfo info = FetchInfoTask.getReader(GiphyInfo.class).readValue(
+                Fixtures.recentGifs(100));
+        mImages = new GifImage[info.gifList.size()];
+        for (int i = 0; i < mImages.length; i++) {
+            GifInfo gif = info.gifList.get(i);
+            mImages[i] = gif.gifImages.imageFixedWidth;
+        }
+    }
+
+    @Benchmark
+    public long bindTiles() {
+        long sum = 0;
+        for (GifImage image : mImages) {
+            sum += image.getWidth() + image.getHeight();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long measureAndLayout() {
+        long sum = 0;
+        for (GifImage image : mImages) {
+            // onMeasure, onLayout and the aspect ratio read the size again
+            sum += image.getWidth() + image.getHeight();
+            sum += image.getWidth() * 31 + image.getHeight();
+            if (image.getHeight() != 0)
+                sum += image.getWidth() / image.getHeight();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long allGetters() {
+        long sum = 0;
+        for (GifImage image : mImages) {
+            sum += image.getWidth() + image.getHeight() + image.getSize() + image.getFrames();
+            sum += image.getUrl().length();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long rawFields() {
+        long sum = 0;
+        for (GifImage image : mImages) {
+            sum += image.width.length() + image.height.length();
+        }
+        return sum;
+    }
+}
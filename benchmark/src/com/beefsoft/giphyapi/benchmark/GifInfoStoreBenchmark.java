@@ -0,0 +1,48 @@
+package com.beefsoft.giphyapi.benchmark;
+
+import com.beefsoft.giphyapi.data.GiphyInfo;
+import com.beefsoft.giphyapi.utils.FetchInfoTask;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Binding of a response whose gifs are already in memory, like the pages of
+ * a feed that is scrolled or refreshed. The repeated gifs are resolved in the
+ * GifInfoStore by id and their images are not bound again, compare the
+ * gc.alloc.rate.norm of the GC profiler with {@link ParseBenchmark}.
+ *
+ * @author Marcos Trujillo
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class GifInfoStoreBenchmark {
+
+    @Param({ "10", "25", "100" })
+    public int items;
+
+    private String mJson;
+    // Keeps the gifs in memory, the store only references them weakly
+    private GiphyInfo mKnownGifs;
+
+    @Setup
+    public void setUp() throws IOException {
+        mJson = new String(Fixtures.recentGifs(items), Fixtures.CHARSET);
+        mKnownGifs = FetchInfoTask.getReader(GiphyInfo.class).readValue(mJson);
+    }
+
+    @Benchmark
+    public GiphyInfo knownGifs() throws IOException {
+        return FetchInfoTask.getReader(GiphyInfo.class).readValue(mJson);
+    }
+}
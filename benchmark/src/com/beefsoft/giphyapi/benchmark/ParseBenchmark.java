@@ -0,0 +1,64 @@
+package com.beefsoft.giphyapi.benchmark;
+
+import com.beefsoft.giphyapi.data.GiphyInfo;
+import com.beefsoft.giphyapi.data.GiphyInfoParser;
+import com.beefsoft.giphyapi.data.StopCondition;
+import com.beefsoft.giphyapi.utils.FetchInfoTask;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson binding of {@link GiphyInfo} with the shared reader of the library,
+ * from the String the library reads today and directly from the stream of the
+ * response. The partial path stops after the first {@link #PARTIAL_ITEMS}
+ * gifs, like a screen that only shows a few of them.
+ *
+ * @author Marcos Trujillo
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ParseBenchmark {
+    private static final int PARTIAL_ITEMS = 4;
+
+    @Param({ "10", "25", "100" })
+    public int items;
+
+    private final ObjectReader mReader = FetchInfoTask.getReader(GiphyInfo.class);
+    private byte[] mBytes;
+    private String mJson;
+
+    @Setup
+    public void setUp() throws IOException {
+        mBytes = Fixtures.recentGifs(items);
+        mJson = new String(mBytes, Fixtures.CHARSET);
+    }
+
+    @Benchmark
+    public GiphyInfo stringPath() throws IOException {
+        return mReader.readValue(mJson);
+    }
+
+    @Benchmark
+    public GiphyInfo streamPath() throws IOException {
+        return mReader.readValue(new ByteArrayInputStream(mBytes));
+    }
+
+    @Benchmark
+    public GiphyInfo partialPath() throws IOException {
+        return GiphyInfoParser.parse(new ByteArrayInputStream(mBytes),
+                StopCondition.maxItems(PARTIAL_ITEMS));
+    }
+}
@@ -0,0 +1,62 @@
+package com.beefsoft.giphyapi.benchmark;
+
+import com.beefsoft.giphyapi.data.GiphyInfo;
+import com.beefsoft.giphyapi.data.GiphySnapshot;
+import com.beefsoft.giphyapi.utils.FetchInfoTask;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading the last feed from a {@link GiphySnapshot} on launch, to compare
+ * with the json paths of {@link ParseBenchmark}. The first screen path opens
+ * the snapshot and materializes the first {@link #FIRST_SCREEN_ITEMS} gifs,
+ * the full path all of them.
+ *
+ * @author Marcos Trujillo
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SnapshotBenchmark {
+    private static final int FIRST_SCREEN_ITEMS = 6;
+
+    @Param({ "10", "25", "100" })
+    public int items;
+
+    private File mFile;
+
+    @Setup
+    public void setUp() throws IOException {
+        GiphyInfo info = FetchInfoTask.getReader(GiphyInfo.class).readValue(
+                Fixtures.recentGifs(items));
+        mFile = File.createTempFile("snapshot", ".gifs");
+        GiphySnapshot.write(info, mFile);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    @Benchmark
+    public GiphyInfo firstScreen() throws IOException {
+        return GiphySnapshot.open(mFile).toGiphyInfo(FIRST_SCREEN_ITEMS);
+    }
+
+    @Benchmark
+    public GiphyInfo fullSnapshot() throws IOException {
+        return GiphySnapshot.open(mFile).toGiphyInfo();
+    }
+}
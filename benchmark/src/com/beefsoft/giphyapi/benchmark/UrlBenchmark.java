@@ -0,0 +1,45 @@
+package com.beefsoft.giphyapi.benchmark;
+
+import com.beefsoft.giphyapi.Giphy;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Url construction of getRecentGifs and translateWordToGif with the builders
+ * of {@link Giphy}.
+ *
+ * @author Marcos Trujillo
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class UrlBenchmark {
+
+    @Setup
+    public void setUp() {
+        Giphy.initBeta();
+    }
+
+    @Benchmark
+    public String recent() {
+        return Giphy.buildRecentUrl(null, -1);
+    }
+
+    @Benchmark
+    public String recentWithTagAndLimit() {
+        return Giphy.buildRecentUrl("ryan-gosling", 25);
+    }
+
+    @Benchmark
+    public String translate() {
+        return Giphy.buildTranslateUrl("superman", 1);
+    }
+}
@@ -0,0 +1,64 @@
+package com.beefsoft.giphyapi.utils;
+
+import com.beefsoft.giphyapi.benchmark.Fixtures;
+import com.beefsoft.giphyapi.data.GiphyInfo;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parse time of the first response in a new process: with a new ObjectMapper,
+ * as the library did before, and with the shared reader after the warm up of
+ * Giphy.init. Every fork measures only one call.
+ *
+ * @author Marcos Trujillo
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(20)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+public class FirstRequestBenchmark {
+    private static final String SAMPLE = "{\"data\":[{\"images\":{\"original\":{}}}],\"meta\":{}}";
+
+    private String mJson;
+
+    @Setup
+    public void setUp() throws IOException {
+        mJson = new String(Fixtures.recentGifs(25), Fixtures.CHARSET);
+    }
+
+    @Benchmark
+    public GiphyInfo coldMapper() throws IOException {
+        return new ObjectMapper().readValue(mJson, GiphyInfo.class);
+    }
+
+    @Benchmark
+    public GiphyInfo warmedReader(WarmedUp warmedUp) throws IOException {
+        return FetchInfoTask.getReader(GiphyInfo.class).readValue(mJson);
+    }
+
+    /**
+     * Warm up done by Giphy.init, out of the measured time
+     */
+    @State(Scope.Benchmark)
+    public static class WarmedUp {
+        @Setup
+        public void setUp() {
+            FetchInfoTask.warmUpReader(GiphyInfo.class, SAMPLE);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.beefsoft.giphyapi.utils;
+
+import com.beefsoft.giphyapi.benchmark.Fixtures;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link FetchInfoTask} readStream with and without Content-Length. In the
+ * same package than FetchInfoTask to reach the package-private method.
+ *
+ * @author Marcos Trujillo
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ReadStreamBenchmark {
+    @Param({ "10", "25", "100" })
+    public int items;
+
+    private byte[] mBytes;
+
+    @Setup
+    public void setUp() throws IOException {
+        mBytes = Fixtures.recentGifs(items);
+    }
+
+    @Benchmark
+    public String withContentLength() throws IOException {
+        return FetchInfoTask.readStream(new ByteArrayInputStream(mBytes), mBytes.length);
+    }
+
+    @Benchmark
+    public String withoutContentLength() throws IOException {
+        return FetchInfoTask.readStream(new ByteArrayInputStream(mBytes), -1);
+    }
+}
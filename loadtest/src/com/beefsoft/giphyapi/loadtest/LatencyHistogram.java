@@ -0,0 +1,104 @@
+package com.beefsoft.giphyapi.loadtest;
+
+/**
+ * Latency histogram with log-linear buckets, like the HdrHistogram. The values
+ * are recorded in microseconds with a precision of 3 significant digits
+ * (1024 sub buckets per power of two) up to one hour, using a fixed amount of
+ * memory. Values bigger than one hour are recorded as one hour.
+ * <p>
+ * The histogram is thread safe.
+ *
+ * @author Marcos Trujillo
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 11;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT / 2;
+    public static final long MAX_VALUE = 60L * 60 * 1000 * 1000; // 1 hour in us
+
+    private final long[] mCounts = new long[indexOf(MAX_VALUE) + 1];
+    private long mTotalCount = 0;
+    private long mMax = 0;
+    private long mMin = Long.MAX_VALUE;
+    private double mSum = 0;
+
+    /**
+     * Records a latency
+     *
+     * @param micros latency in microseconds
+     */
+    public synchronized void record(long micros) {
+        long value = Math.min(Math.max(micros, 0), MAX_VALUE);
+        mCounts[indexOf(value)]++;
+        mTotalCount++;
+        mSum += value;
+        mMax = Math.max(mMax, value);
+        mMin = Math.min(mMin, value);
+    }
+
+    /**
+     * Adds all the values of other histogram to this one
+     *
+     * @param other
+     */
+    public synchronized void add(LatencyHistogram other) {
+        synchronized (other) {
+            for (int i = 0; i < mCounts.length; i++) {
+                mCounts[i] += other.mCounts[i];
+            }
+            mTotalCount += other.mTotalCount;
+            mSum += other.mSum;
+            mMax = Math.max(mMax, other.mMax);
+            mMin = Math.min(mMin, other.mMin);
+        }
+    }
+
+    public synchronized long getTotalCount() {
+        return mTotalCount;
+    }
+
+    public synchronized long getMax() {
+        return mMax;
+    }
+
+    public synchronized long getMin() {
+        return mTotalCount == 0 ? 0 : mMin;
+    }
+
+    public synchronized double getMean() {
+        return mTotalCount == 0 ? 0 : mSum / mTotalCount;
+    }
+
+    /**
+     * Value under which are the percentage of values indicated
+     *
+     * @param percentile between 0 and 100, like 99.9
+     * @return the latency in microseconds, 0 if empty
+     */
+    public synchronized long getValueAtPercentile(double percentile) {
+        if (mTotalCount == 0)
+            return 0;
+
+        long target = (long) Math.ceil(Math.min(percentile, 100) / 100 * mTotalCount);
+        target = Math.max(target, 1);
+        long count = 0;
+        for (int i = 0; i < mCounts.length; i++) {
+            count += mCounts[i];
+            if (count >= target)
+                return Math.min(highestEquivalentValue(i), mMax);
+        }
+        return mMax;
+    }
+
+    private static int indexOf(long value) {
+        int magnitude = Math.max(0, 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS);
+        int subBucket = (int) (value >>> magnitude);
+        return magnitude * SUB_BUCKET_HALF + subBucket;
+    }
+
+    private static long highestEquivalentValue(int index) {
+        int magnitude = index < SUB_BUCKET_COUNT ? 0 : index / SUB_BUCKET_HALF - 1;
+        long subBucket = index - magnitude * SUB_BUCKET_HALF;
+        return ((subBucket + 1) << magnitude) - 1;
+    }
+}
@@ -0,0 +1,245 @@
+package com.beefsoft.giphyapi.loadtest;
+
+import com.beefsoft.giphyapi.Giphy.CachePolicy;
+import com.beefsoft.giphyapi.Giphy.GiphyCallback;
+import com.beefsoft.giphyapi.GiphyClient;
+import com.beefsoft.giphyapi.data.GiphyInfo;
+import com.beefsoft.giphyapi.data.GiphyInfo.GifInfo;
+import com.beefsoft.giphyapi.utils.FetchInfoTask;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends a constant rate of requests and measures their latency. The requests
+ * are made through a {@link GiphyClient}, so the latency includes the
+ * scheduling of the client, the coalescing of the requests of the same url
+ * and the delivery of the callback, or directly through the
+ * {@link FetchInfoTask} pipeline (http, read and json parsing) to measure it
+ * alone.
+ * <p>
+ * The requests are scheduled at fixed times, they don't wait for the previous
+ * ones to finish. The latency is measured from the time the request should
+ * have started, so when the client can't keep the rate the time waiting in
+ * the queue is measured too instead of hidden.
+ *
+ * @author Marcos Trujillo
+ */
+public class LoadDriver {
+    private static final long CALLBACK_TIMEOUT = 60; // s
+
+    private final List<Request> mRequests;
+    private final int mRequestsPerSecond;
+    private final int mDurationSeconds;
+    private final int mConcurrency;
+
+    private final LatencyHistogram mHistogram = new LatencyHistogram();
+    private final AtomicLong mErrors = new AtomicLong();
+    private final AtomicLong mThrottled = new AtomicLong();
+
+    /**
+     * @param requests sent in turns, like {@link #fetch(String)} or
+     *            {@link #recentGifs(GiphyClient, String)}
+     * @param requestsPerSecond rate to sustain
+     * @param durationSeconds duration of the test
+     * @param concurrency max number of requests in progress
+     */
+    public LoadDriver(List<Request> requests, int requestsPerSecond, int durationSeconds,
+            int concurrency) {
+        if (requests == null || requests.isEmpty())
+            throw new IllegalArgumentException("No requests to send");
+        if (requestsPerSecond <= 0 || durationSeconds <= 0 || concurrency <= 0)
+            throw new IllegalArgumentException("Invalid rate, duration or concurrency");
+
+        mRequests = new ArrayList<Request>(requests);
+        mRequestsPerSecond = requestsPerSecond;
+        mDurationSeconds = durationSeconds;
+        mConcurrency = concurrency;
+    }
+
+    /**
+     * Runs the test. Blocks until all the requests finish.
+     *
+     * @param name of the run, for the report
+     * @return the report of the run
+     * @throws InterruptedException
+     */
+    public LoadReport run(String name) throws InterruptedException {
+        ExecutorService workers = Executors.newFixedThreadPool(mConcurrency);
+        long total = (long) mRequestsPerSecond * mDurationSeconds;
+        long interval = TimeUnit.SECONDS.toNanos(1) / mRequestsPerSecond;
+        long start = System.nanoTime();
+        try {
+            for (long i = 0; i < total; i++) {
+                long intended = start + i * interval;
+                long wait;
+                while ((wait = intended - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                if (Thread.interrupted())
+                    throw new InterruptedException();
+                workers.execute(new Shot(mRequests.get((int) (i % mRequests.size())), intended));
+            }
+        } finally {
+            workers.shutdown();
+        }
+        workers.awaitTermination(mDurationSeconds + 60, TimeUnit.SECONDS);
+        long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        return new LoadReport(name, mRequestsPerSecond, duration, mHistogram, mErrors.get(),
+                mThrottled.get());
+    }
+
+    /**
+     * Request made directly through the {@link FetchInfoTask} pipeline, in
+     * the thread of the driver
+     *
+     * @param url
+     */
+    public static Request fetch(final String url) {
+        return new Request() {
+            @Override
+            public int send() {
+                TimedFetch fetch = new TimedFetch(url);
+                GiphyInfo result = fetch.fetch();
+                if (result != null && result.meta != null)
+                    return result.meta.status;
+                return fetch.mErrorType;
+            }
+        };
+    }
+
+    /**
+     * Request of the recent gifs made through the client, without cache
+     *
+     * @param client
+     * @param tag (optional)
+     */
+    public static Request recentGifs(final GiphyClient client, final String tag) {
+        return new CallbackRequest() {
+            @Override
+            protected void call(GiphyCallback callback) {
+                client.getRecentGifs(tag, -1, CachePolicy.NETWORK_ONLY, callback);
+            }
+        };
+    }
+
+    /**
+     * Translation made through the client
+     *
+     * @param client
+     * @param term
+     */
+    public static Request translation(final GiphyClient client, final String term) {
+        return new CallbackRequest() {
+            @Override
+            protected void call(GiphyCallback callback) {
+                client.translateWordToGif(term, callback);
+            }
+        };
+    }
+
+    /**
+     * Request sent by the driver
+     */
+    public interface Request {
+        /**
+         * Sends the request and waits for the response
+         *
+         * @return the status of the response, 200 if it was OK
+         */
+        int send() throws InterruptedException;
+    }
+
+    /**
+     * Request of the library that returns the gifs to a callback. The
+     * callback doesn't receive the status, an empty result is an error.
+     */
+    private static abstract class CallbackRequest implements Request {
+
+        protected abstract void call(GiphyCallback callback);
+
+        @Override
+        public int send() throws InterruptedException {
+            final CountDownLatch done = new CountDownLatch(1);
+            final boolean[] empty = new boolean[1];
+            call(new GiphyCallback() {
+                @Override
+                public void onResult(ArrayList<GifInfo> result) {
+                    empty[0] = result == null || result.isEmpty();
+                    done.countDown();
+                }
+            });
+            if (!done.await(CALLBACK_TIMEOUT, TimeUnit.SECONDS))
+                return -1;
+            return empty[0] ? -1 : 200;
+        }
+    }
+
+    /**
+     * A request scheduled at a fixed time
+     */
+    private class Shot implements Runnable {
+        private final Request mRequest;
+        private final long mIntendedStart;
+
+        private Shot(Request request, long intendedStart) {
+            mRequest = request;
+            mIntendedStart = intendedStart;
+        }
+
+        @Override
+        public void run() {
+            int status;
+            try {
+                status = mRequest.send();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            long latency = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - mIntendedStart);
+
+            if (status == 200) {
+                mHistogram.record(latency);
+                return;
+            }
+            mErrors.incrementAndGet();
+            if (status == 429)
+                mThrottled.incrementAndGet();
+        }
+    }
+
+    /**
+     * Fetch executed synchronously in the thread of the driver, the same
+     * pipeline Giphy runs in the AsyncTask, without the client
+     */
+    private static class TimedFetch extends FetchInfoTask<GiphyInfo> {
+        private final String mUrl;
+        private int mErrorType = -1;
+
+        private TimedFetch(String url) {
+            super(url);
+            mUrl = url;
+            enableJsonParsing(GiphyInfo.class);
+        }
+
+        private GiphyInfo fetch() {
+            return doInBackground(mUrl);
+        }
+
+        @Override
+        protected void onResult(GiphyInfo result) {
+        }
+
+        @Override
+        protected void onError(int type, String message) {
+            mErrorType = type;
+        }
+    }
+}
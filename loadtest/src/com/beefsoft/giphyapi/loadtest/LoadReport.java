@@ -0,0 +1,178 @@
+package com.beefsoft.giphyapi.loadtest;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * Result of a load test run. It can be stored in a properties file to compare
+ * it with later runs.
+ *
+ * @author Marcos Trujillo
+ */
+public class LoadReport {
+    private static final String KEY_NAME = "name";
+    private static final String KEY_TARGET_RATE = "target.rps";
+    private static final String KEY_DURATION = "duration.ms";
+    private static final String KEY_REQUESTS = "requests";
+    private static final String KEY_ERRORS = "errors";
+    private static final String KEY_THROTTLED = "throttled";
+    private static final String KEY_THROUGHPUT = "throughput.rps";
+    private static final String KEY_MEAN = "latency.mean.us";
+    private static final String KEY_P50 = "latency.p50.us";
+    private static final String KEY_P90 = "latency.p90.us";
+    private static final String KEY_P99 = "latency.p99.us";
+    private static final String KEY_P999 = "latency.p999.us";
+    private static final String KEY_MAX = "latency.max.us";
+
+    public final String name;
+    public final int targetRate;
+    public final long durationMillis;
+    public final long requests;
+    public final long errors;
+    public final long throttled;
+    public final double throughput;
+    public final double mean;
+    public final long p50;
+    public final long p90;
+    public final long p99;
+    public final long p999;
+    public final long max;
+
+    /**
+     * @param name of the run
+     * @param targetRate requests per second requested
+     * @param durationMillis real duration of the run
+     * @param histogram latencies of the successful requests
+     * @param errors number of failed requests, throttled included
+     * @param throttled number of requests answered with 429
+     */
+    public LoadReport(String name, int targetRate, long durationMillis,
+            LatencyHistogram histogram, long errors, long throttled) {
+        this.name = name;
+        this.targetRate = targetRate;
+        this.durationMillis = durationMillis;
+        this.requests = histogram.getTotalCount() + errors;
+        this.errors = errors;
+        this.throttled = throttled;
+        this.throughput = durationMillis > 0 ? histogram.getTotalCount() * 1000.0
+                / durationMillis : 0;
+        this.mean = histogram.getMean();
+        this.p50 = histogram.getValueAtPercentile(50);
+        this.p90 = histogram.getValueAtPercentile(90);
+        this.p99 = histogram.getValueAtPercentile(99);
+        this.p999 = histogram.getValueAtPercentile(99.9);
+        this.max = histogram.getMax();
+    }
+
+    private LoadReport(Properties properties) {
+        name = properties.getProperty(KEY_NAME, "");
+        targetRate = Integer.parseInt(properties.getProperty(KEY_TARGET_RATE, "0"));
+        durationMillis = Long.parseLong(properties.getProperty(KEY_DURATION, "0"));
+        requests = Long.parseLong(properties.getProperty(KEY_REQUESTS, "0"));
+        errors = Long.parseLong(properties.getProperty(KEY_ERRORS, "0"));
+        throttled = Long.parseLong(properties.getProperty(KEY_THROTTLED, "0"));
+        throughput = Double.parseDouble(properties.getProperty(KEY_THROUGHPUT, "0"));
+        mean = Double.parseDouble(properties.getProperty(KEY_MEAN, "0"));
+        p50 = Long.parseLong(properties.getProperty(KEY_P50, "0"));
+        p90 = Long.parseLong(properties.getProperty(KEY_P90, "0"));
+        p99 = Long.parseLong(properties.getProperty(KEY_P99, "0"));
+        p999 = Long.parseLong(properties.getProperty(KEY_P999, "0"));
+        max = Long.parseLong(properties.getProperty(KEY_MAX, "0"));
+    }
+
+    /**
+     * Reads a report saved with {@link #save(File)}
+     *
+     * @param file
+     * @throws IOException
+     */
+    public static LoadReport load(File file) throws IOException {
+        Properties properties = new Properties();
+        InputStream in = new FileInputStream(file);
+        try {
+            properties.load(in);
+        } finally {
+            in.close();
+        }
+        try {
+            return new LoadReport(properties);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid report " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Stores the report in a properties file
+     *
+     * @param file
+     * @throws IOException
+     */
+    public void save(File file) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(KEY_NAME, name);
+        properties.setProperty(KEY_TARGET_RATE, String.valueOf(targetRate));
+        properties.setProperty(KEY_DURATION, String.valueOf(durationMillis));
+        properties.setProperty(KEY_REQUESTS, String.valueOf(requests));
+        properties.setProperty(KEY_ERRORS, String.valueOf(errors));
+        properties.setProperty(KEY_THROTTLED, String.valueOf(throttled));
+        properties.setProperty(KEY_THROUGHPUT, String.valueOf(throughput));
+        properties.setProperty(KEY_MEAN, String.valueOf(mean));
+        properties.setProperty(KEY_P50, String.valueOf(p50));
+        properties.setProperty(KEY_P90, String.valueOf(p90));
+        properties.setProperty(KEY_P99, String.valueOf(p99));
+        properties.setProperty(KEY_P999, String.valueOf(p999));
+        properties.setProperty(KEY_MAX, String.valueOf(max));
+
+        OutputStream out = new FileOutputStream(file);
+        try {
+            properties.store(out, "Giphy load test report");
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Returns a table with the values of this report and the changes from the
+     * baseline
+     *
+     * @param baseline report of a previous run
+     */
+    public String compareTo(LoadReport baseline) {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format(Locale.US, "%-16s %14s %14s %9s%n", "", baseline.name,
+                name, "change"));
+        appendRow(builder, "throughput rps", baseline.throughput, throughput);
+        appendRow(builder, "errors", baseline.errors, errors);
+        appendRow(builder, "throttled", baseline.throttled, throttled);
+        appendRow(builder, "mean us", baseline.mean, mean);
+        appendRow(builder, "p50 us", baseline.p50, p50);
+        appendRow(builder, "p90 us", baseline.p90, p90);
+        appendRow(builder, "p99 us", baseline.p99, p99);
+        appendRow(builder, "p99.9 us", baseline.p999, p999);
+        appendRow(builder, "max us", baseline.max, max);
+        return builder.toString();
+    }
+
+    private static void appendRow(StringBuilder builder, String label, double before,
+            double after) {
+        String change = before == 0 ? "-" : String.format(Locale.US, "%+.1f%%",
+                (after - before) * 100 / before);
+        builder.append(String.format(Locale.US, "%-16s %14.1f %14.1f %9s%n", label, before,
+                after, change));
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "LoadReport [name=%s, target=%d rps, duration=%d ms, "
+                + "requests=%d, errors=%d, throttled=%d, throughput=%.1f rps, mean=%.0f us, "
+                + "p50=%d us, p90=%d us, p99=%d us, p99.9=%d us, max=%d us]", name, targetRate,
+                durationMillis, requests, errors, throttled, throughput, mean, p50, p90, p99,
+                p999, max);
+    }
+}
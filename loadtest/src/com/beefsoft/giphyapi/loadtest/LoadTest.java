@@ -0,0 +1,104 @@
+package com.beefsoft.giphyapi.loadtest;
+
+import com.beefsoft.giphyapi.Giphy;
+import com.beefsoft.giphyapi.GiphyClient;
+import com.beefsoft.giphyapi.loadtest.LoadDriver.Request;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Runs a load test against the {@link StubGiphyServer} and prints the report.
+ * Must be run where the library works (device, emulator or a JVM with the
+ * Android classes), with the arguments as key=value:
+ * <ul>
+ * <li>fixtures: directory with recent.json and translate.json. Default
+ * "loadtest/fixtures"
+ * <li>rps: requests per second. Default 50
+ * <li>seconds: duration of the test. Default 30
+ * <li>concurrency: max requests in progress. Default 32
+ * <li>latency: latency of the server in ms. Default 50
+ * <li>bandwidth: bytes per second of the server, 0 for unlimited. Default 0
+ * <li>errors: rate of 500 errors, between 0 and 1. Default 0
+ * <li>throttle: rate of 429 errors, between 0 and 1. Default 0
+ * <li>path: "client" to send the requests through a {@link GiphyClient}, with
+ * its scheduling and callbacks, or "fetch" to measure only the fetch and
+ * parsing of the responses. Default "client"
+ * <li>name: name of the run. Default "run"
+ * <li>report: file where the report is saved (optional)
+ * <li>baseline: report of a previous run to compare with (optional)
+ * </ul>
+ * With the client path the callbacks are delivered in the main thread, that
+ * must not be blocked while the test runs.
+ *
+ * @author Marcos Trujillo
+ */
+public class LoadTest {
+    private static final String API_KEY = "dc6zaTOxFJmzC";
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Map<String, String> options = new HashMap<String, String>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator > 0)
+                options.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+
+        File fixtures = new File(option(options, "fixtures", "loadtest/fixtures"));
+        StubGiphyServer server = new StubGiphyServer(0);
+        server.setPayload(StubGiphyServer.RECENT_PATH, new File(fixtures, "recent.json"));
+        server.setPayload(StubGiphyServer.TRANSLATE_PATH, new File(fixtures, "translate.json"));
+        server.setLatency(Long.parseLong(option(options, "latency", "50")));
+        server.setBandwidth(Integer.parseInt(option(options, "bandwidth", "0")));
+        server.setErrorRate(Double.parseDouble(option(options, "errors", "0")));
+        server.setThrottleRate(Double.parseDouble(option(options, "throttle", "0")));
+        server.start();
+
+        GiphyClient client = null;
+        try {
+            ArrayList<Request> requests = new ArrayList<Request>();
+            if ("fetch".equals(option(options, "path", "client"))) {
+                // The urls of getRecentGifs and translateWordToGif, built by Giphy
+                Giphy.init(API_KEY);
+                Giphy.setHost(server.getBaseUrl());
+                requests.add(LoadDriver.fetch(Giphy.buildRecentUrl(null, -1)));
+                requests.add(LoadDriver.fetch(Giphy.buildRecentUrl("cat", -1)));
+                requests.add(LoadDriver.fetch(Giphy.buildTranslateUrl("happy", -1)));
+            } else {
+                client = new GiphyClient("loadtest", API_KEY).setHost(server.getBaseUrl());
+                requests.add(LoadDriver.recentGifs(client, null));
+                requests.add(LoadDriver.recentGifs(client, "cat"));
+                requests.add(LoadDriver.translation(client, "happy"));
+            }
+
+            LoadDriver driver = new LoadDriver(requests,
+                    Integer.parseInt(option(options, "rps", "50")),
+                    Integer.parseInt(option(options, "seconds", "30")),
+                    Integer.parseInt(option(options, "concurrency", "32")));
+            LoadReport report = driver.run(option(options, "name", "run"));
+            System.out.println(report);
+            if (client != null)
+                System.out.println(client.getStats());
+
+            String baseline = options.get("baseline");
+            if (baseline != null)
+                System.out.print(report.compareTo(LoadReport.load(new File(baseline))));
+
+            String reportFile = options.get("report");
+            if (reportFile != null)
+                report.save(new File(reportFile));
+        } finally {
+            if (client != null)
+                client.close();
+            server.stop();
+        }
+    }
+
+    private static String option(Map<String, String> options, String key, String defaultValue) {
+        String value = options.get(key);
+        return value != null ? value : defaultValue;
+    }
+}
@@ -0,0 +1,335 @@
+package com.beefsoft.giphyapi.loadtest;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Embedded http server that replays recorded Giphy responses. It listens on
+ * the loopback interface and supports keep alive connections, so the
+ * connection reuse of the client is tested too.
+ * <p>
+ * The latency, the bandwidth and the rate of errors (500) and throttled
+ * responses (429) can be configured, also while a test is running.
+ * <p>
+ * Usage:
+ *
+ * <pre class="prettyprint">
+ * StubGiphyServer server = new StubGiphyServer(0);
+ * server.setPayload(StubGiphyServer.RECENT_PATH, new File("fixtures/recent.json"));
+ * server.setLatency(80);
+ * server.start();
+ * Giphy.setHost(server.getBaseUrl());
+ * </pre>
+ *
+ * @author Marcos Trujillo
+ */
+public class StubGiphyServer {
+    public static final String RECENT_PATH = "/v1/gifs/recent";
+    public static final String TRANSLATE_PATH = "/v1/gifs/translate";
+
+    private static final int SOCKET_TIMEOUT = 15000;
+    private static final int CHUNK_SIZE = 1024;
+    private static final String CHARSET = "UTF-8";
+
+    private final int mPort;
+    private final Map<String, byte[]> mPayloads = new LinkedHashMap<String, byte[]>();
+    private final Random mRandom = new Random();
+    private final AtomicLong mRequests = new AtomicLong();
+    private ServerSocket mServerSocket;
+    private ExecutorService mExecutor;
+
+    private volatile long mLatency = 0;
+    private volatile int mBandwidth = 0;
+    private volatile double mErrorRate = 0;
+    private volatile double mThrottleRate = 0;
+
+    /**
+     * @param port to listen, 0 to use any free port
+     */
+    public StubGiphyServer(int port) {
+        mPort = port;
+    }
+
+    /**
+     * Sets the response of the requests whose path starts with the indicated
+     *
+     * @param path like {@link #RECENT_PATH}
+     * @param body json returned
+     */
+    public synchronized void setPayload(String path, byte[] body) {
+        mPayloads.put(path, body);
+    }
+
+    /**
+     * Sets the response of the requests whose path starts with the indicated
+     *
+     * @param path like {@link #RECENT_PATH}
+     * @param file with the json recorded
+     * @throws IOException
+     */
+    public void setPayload(String path, File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream((int) file.length());
+            byte[] buffer = new byte[CHUNK_SIZE];
+            int length;
+            while ((length = in.read(buffer)) != -1) {
+                out.write(buffer, 0, length);
+            }
+            setPayload(path, out.toByteArray());
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Time waited before answering every request
+     *
+     * @param millis
+     */
+    public void setLatency(long millis) {
+        mLatency = millis;
+    }
+
+    /**
+     * Limits the speed of the responses
+     *
+     * @param bytesPerSecond 0 to disable
+     */
+    public void setBandwidth(int bytesPerSecond) {
+        mBandwidth = bytesPerSecond;
+    }
+
+    /**
+     * Rate of requests answered with a 500 error
+     *
+     * @param rate between 0 and 1
+     */
+    public void setErrorRate(double rate) {
+        mErrorRate = rate;
+    }
+
+    /**
+     * Rate of requests answered with a 429 Too Many Requests error
+     *
+     * @param rate between 0 and 1
+     */
+    public void setThrottleRate(double rate) {
+        mThrottleRate = rate;
+    }
+
+    /**
+     * Number of requests received since the server started
+     */
+    public long getRequestCount() {
+        return mRequests.get();
+    }
+
+    /**
+     * Base url to use with Giphy.setHost
+     */
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + mServerSocket.getLocalPort() + "/";
+    }
+
+    public synchronized void start() throws IOException {
+        if (mServerSocket != null)
+            return;
+
+        mServerSocket = new ServerSocket(mPort, 256, InetAddress.getByName("127.0.0.1"));
+        mExecutor = Executors.newCachedThreadPool();
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                acceptConnections();
+            }
+        });
+    }
+
+    public synchronized void stop() {
+        if (mServerSocket == null)
+            return;
+
+        try {
+            mServerSocket.close();
+        } catch (IOException e) {
+            // Closing anyway
+        }
+        mExecutor.shutdownNow();
+        mServerSocket = null;
+    }
+
+    private void acceptConnections() {
+        ServerSocket serverSocket = mServerSocket;
+        while (!serverSocket.isClosed()) {
+            try {
+                final Socket socket = serverSocket.accept();
+                mExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        handleConnection(socket);
+                    }
+                });
+            } catch (IOException e) {
+                // The server was stopped
+                return;
+            }
+        }
+    }
+
+    /**
+     * Answers the requests of a connection until the client closes it
+     */
+    private void handleConnection(Socket socket) {
+        try {
+            socket.setSoTimeout(SOCKET_TIMEOUT);
+            socket.setTcpNoDelay(true);
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = socket.getOutputStream();
+            boolean keepAlive = true;
+            while (keepAlive) {
+                String requestLine = readLine(in);
+                if (requestLine == null || requestLine.length() == 0)
+                    break;
+
+                // Headers, only the Connection is needed
+                keepAlive = requestLine.endsWith("HTTP/1.1");
+                String header;
+                while ((header = readLine(in)) != null && header.length() > 0) {
+                    String lower = header.toLowerCase(Locale.US);
+                    if (lower.startsWith("connection:"))
+                        keepAlive = lower.contains("keep-alive");
+                }
+
+                mRequests.incrementAndGet();
+                respond(out, requestLine, keepAlive);
+            }
+        } catch (SocketException e) {
+            // Closed by the client
+        } catch (IOException e) {
+            // Read timeout or broken connection
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Nothing to do
+            }
+        }
+    }
+
+    private void respond(OutputStream out, String requestLine, boolean keepAlive)
+            throws IOException, InterruptedException {
+        if (mLatency > 0)
+            Thread.sleep(mLatency);
+
+        String[] parts = requestLine.split(" ");
+        // HEAD gets the headers of the response without body, like the warm up
+        boolean head = "HEAD".equals(parts[0]);
+        String path = parts.length > 1 ? parts[1] : "/";
+        int query = path.indexOf('?');
+        if (query != -1)
+            path = path.substring(0, query);
+        // The client builds the urls as host + endpoint, like "host//v1/..."
+        path = path.replaceAll("/+", "/");
+
+        double dice;
+        synchronized (mRandom) {
+            dice = mRandom.nextDouble();
+        }
+        if (dice < mThrottleRate) {
+            writeResponse(out, 429, "Too Many Requests", error(429, "Rate limit exceeded"),
+                    keepAlive, head);
+            return;
+        }
+        if (dice < mThrottleRate + mErrorRate) {
+            writeResponse(out, 500, "Internal Server Error", error(500, "Injected error"),
+                    keepAlive, head);
+            return;
+        }
+
+        byte[] body = null;
+        synchronized (this) {
+            for (Map.Entry<String, byte[]> payload : mPayloads.entrySet()) {
+                if (path.startsWith(payload.getKey())) {
+                    body = payload.getValue();
+                    break;
+                }
+            }
+        }
+        if (body == null)
+            writeResponse(out, 404, "Not Found", error(404, "Not found"), keepAlive, head);
+        else
+            writeResponse(out, 200, "OK", body, keepAlive, head);
+    }
+
+    private void writeResponse(OutputStream out, int status, String reason, byte[] body,
+            boolean keepAlive, boolean head) throws IOException, InterruptedException {
+        StringBuilder headers = new StringBuilder();
+        headers.append("HTTP/1.1 ").append(status).append(' ').append(reason).append("\r\n");
+        headers.append("Content-Type: application/json; charset=utf-8\r\n");
+        headers.append("Content-Length: ").append(body.length).append("\r\n");
+        headers.append("Connection: ").append(keepAlive ? "keep-alive" : "close").append("\r\n");
+        headers.append("\r\n");
+        out.write(headers.toString().getBytes(CHARSET));
+        if (head) {
+            out.flush();
+            return;
+        }
+
+        int bandwidth = mBandwidth;
+        if (bandwidth <= 0) {
+            out.write(body);
+        } else {
+            for (int offset = 0; offset < body.length; offset += CHUNK_SIZE) {
+                int length = Math.min(CHUNK_SIZE, body.length - offset);
+                out.write(body, offset, length);
+                out.flush();
+                Thread.sleep(length * 1000L / bandwidth);
+            }
+        }
+        out.flush();
+    }
+
+    private static byte[] error(int status, String message) throws IOException {
+        return ("{\"data\":[],\"meta\":{\"status\":" + status + ",\"msg\":\"" + message + "\"}}")
+                .getBytes(CHARSET);
+    }
+
+    /**
+     * Reads a line of the request without the CRLF
+     *
+     * @return the line or null if the connection was closed
+     */
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != -1) {
+            if (c == '\n') {
+                int length = line.length();
+                if (length > 0 && line.charAt(length - 1) == '\r')
+                    line.setLength(length - 1);
+                return line.toString();
+            }
+            line.append((char) c);
+        }
+        return line.length() > 0 ? line.toString() : null;
+    }
+}
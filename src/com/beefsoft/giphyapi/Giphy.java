@@ -2,12 +2,26 @@
 package com.beefsoft.giphyapi;
 
 import com.beefsoft.giphyapi.data.GiphyInfo;
+import com.beefsoft.giphyapi.data.GiphyInfo.GifImage;
+import com.beefsoft.giphyapi.data.GiphyInfo.GifImages;
 import com.beefsoft.giphyapi.data.GiphyInfo.GifInfo;
+import com.beefsoft.giphyapi.data.GiphyInfoParser;
+import com.beefsoft.giphyapi.data.StopCondition;
 import com.beefsoft.giphyapi.utils.FetchInfoTask;
+import com.beefsoft.giphyapi.utils.GifIndex;
+import com.beefsoft.giphyapi.utils.MemoryGovernor;
+import com.beefsoft.giphyapi.utils.MemoryGovernor.Tier;
+import com.beefsoft.giphyapi.utils.SizedLruCache;
 
+import android.os.SystemClock;
 import android.util.Log;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * @author Marcos Trujillo
@@ -15,16 +29,63 @@ import java.util.ArrayList;
 public class Giphy {
     private static final String TAG = "Giphy";
     private static final String BETA_KEY = "dc6zaTOxFJmzC";
-    private static final String HOST = "http://api.giphy.com/";
-    private static final String RECENT_END_POINT = "/v1/gifs/recent";
-    private static final String TRANSLATE_END_POINT = "/v1/gifs/translate";
+    private static final String DEFAULT_CLIENT_NAME = "default";
 
-    private static final String KEY_APIKEY = "?api_key=";
-    private static final String KEY_TAG = "&tag=";
-    private static final String KEY_LIMIT = "&limit=";
-    private static final String KEY_WORD = "&s=";
+    // Response with all the nested objects, to build the deserializers
+    private static final String WARM_UP_JSON = "{\"data\":[{\"type\":\"gif\",\"images\":{"
+            + "\"fixed_height\":{\"url\":\"\",\"width\":\"1\",\"height\":\"1\"},"
+            + "\"original\":{\"url\":\"\",\"size\":\"1\",\"frames\":\"1\"}}}],"
+            + "\"meta\":{\"msg\":\"OK\",\"status\":200}}";
 
-    private static String mApiKey;
+    private static final int FEED_CACHE_SIZE = 16;
+    private static final long FEED_MAX_AGE = 60 * 1000; // ms
+
+    // Approximate sizes in bytes to account the cached gifs
+    private static final int OBJECT_SIZE = 48; // header and fields
+    private static final int ARRAY_LIST_SIZE = 64;
+    private static final int REFERENCE_SIZE = 4;
+
+    private static final GiphyClient mDefaultClient = new GiphyClient(DEFAULT_CLIENT_NAME,
+            true);
+    // Set from a background thread, read by the workers and the UI thread
+    private static volatile GifIndex mIndex;
+
+    /**
+     * Last recent gifs received by url, used by
+     * {@link CachePolicy#STALE_WHILE_REVALIDATE}
+     */
+    private static final SizedLruCache<String, CachedFeed> mFeedCache =
+            new SizedLruCache<String, CachedFeed>(FEED_CACHE_SIZE) {
+        @Override
+        protected long sizeOf(String url, CachedFeed feed) {
+            return feed.mSize;
+        }
+    };
+
+    static {
+        MemoryGovernor.register("giphy.feeds", Tier.PARSED_INFO, mFeedCache);
+    }
+
+    /**
+     * Feed requests in progress by url. The same requests made while one is
+     * in progress wait for its result instead of making a new one.
+     */
+    private static final HashMap<String, FeedRequest> mFeedRequests =
+            new HashMap<String, FeedRequest>();
+
+    /**
+     * How the cached gifs are used
+     */
+    public static enum CachePolicy {
+        /** Always fetch the gifs from the server */
+        NETWORK_ONLY,
+        /**
+         * Return the cached gifs immediately, if any, and fetch them again if
+         * they are stale. The callback is called again only if the gifs
+         * changed.
+         */
+        STALE_WHILE_REVALIDATE
+    }
 
     /**
      * Inits the Giphy library
@@ -32,17 +93,121 @@ public class Giphy {
      * @param apiKey
      */
     public static void init(String apiKey) {
+        init(apiKey, false);
+    }
+
+    /**
+     * Inits the Giphy library
+     * 
+     * @param apiKey
+     * @param warmUp true to prepare the json parser and open a connection with
+     *            the host in background, so the first request is faster. Set
+     *            the host with {@link #setHost(String)} before.
+     */
+    public static void init(String apiKey, boolean warmUp) {
         if (apiKey == null || "".equals(apiKey))
             throw new NullPointerException("Invalid ApiKey");
 
-        mApiKey = apiKey;
+        mDefaultClient.setApiKey(apiKey);
+        if (warmUp)
+            warmUp();
     }
 
     /**
      * Inits the Giphy library with a betaapikey
      */
     public static void initBeta() {
-        mApiKey = BETA_KEY;
+        initBeta(false);
+    }
+
+    /**
+     * Inits the Giphy library with a betaapikey
+     * 
+     * @param warmUp true to prepare the json parser and open a connection with
+     *            the host in background, so the first request is faster. Set
+     *            the host with {@link #setHost(String)} before.
+     */
+    public static void initBeta(boolean warmUp) {
+        mDefaultClient.setApiKey(BETA_KEY);
+        if (warmUp)
+            warmUp();
+    }
+
+    /**
+     * Builds the Jackson deserializers of the responses and opens a connection
+     * with the host in a background thread
+     */
+    private static void warmUp() {
+        final String host = mDefaultClient.getHost();
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                long start = System.currentTimeMillis();
+                FetchInfoTask.warmUpReader(GiphyInfo.class, WARM_UP_JSON);
+                long parser = System.currentTimeMillis();
+                FetchInfoTask.warmUpConnection(host);
+                Log.d(TAG, "Warm up finished. Parser: " + (parser - start) + "ms connection: "
+                        + (System.currentTimeMillis() - parser) + "ms");
+            }
+        }, "GiphyWarmUp");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Sets the base url of the api, for example to use a proxy or a stub
+     * server. By default {@value GiphyClient#DEFAULT_HOST}
+     * 
+     * @param host base url, like "http://api.giphy.com/"
+     */
+    public static void setHost(String host) {
+        mDefaultClient.setHost(host);
+    }
+
+    /**
+     * Client used by the static methods. Its weight, quota and stats can be
+     * managed like in the other {@link GiphyClient}s.
+     */
+    public static GiphyClient getDefaultClient() {
+        return mDefaultClient;
+    }
+
+    /**
+     * Enables the local index of the fetched gifs. The tags and slugs of the
+     * gifs received, and the terms searched, are indexed so
+     * {@link #searchLocalGifs(String, int, GiphyCallback)} can answer without
+     * connection. Call it once, better from a background thread because the
+     * index stored in the directory is opened.
+     * 
+     * @param directory where the index is stored, normally a folder in
+     *            Context.getCacheDir()
+     */
+    public static void enableLocalIndex(File directory) {
+        if (directory == null)
+            throw new NullPointerException("Invalid index directory");
+
+        mIndex = new GifIndex(directory);
+    }
+
+    /**
+     * Search the term in the gifs already fetched. The callback is called
+     * immediately, with an empty list if the local index is not enabled. The
+     * gifs are read from the index, also after a restart of the app.
+     * 
+     * @param term to search
+     * @param limit (optional) limits the number of results returned. -1 to
+     *            disable
+     * @param callback to get the result
+     */
+    public static void searchLocalGifs(String term, int limit, GiphyCallback callback) {
+        ArrayList<GifInfo> result = new ArrayList<GifInfo>();
+        GifIndex index = mIndex;
+        if (index != null)
+            result = index.searchGifs(term, limit);
+
+        Log.d(TAG, "Local search of \"" + term + "\": " + result.size() + " gifs");
+        if (callback != null)
+            callback.onResult(result);
     }
 
     /**
@@ -78,20 +243,107 @@ public class Giphy {
      * @param callback to get the result
      */
     public static void getRecentGifs(String tag, int limit, GiphyCallback callback) {
-        StringBuilder url = new StringBuilder(HOST);
-        url.append(RECENT_END_POINT);
-        url.append(KEY_APIKEY);
-        url.append(mApiKey);
-        if (tag != null && !"".equals(tag)) {
-            url.append(KEY_TAG);
-            url.append(tag);
-        }
-        if (limit != -1) {
-            url.append(KEY_LIMIT);
-            url.append(limit);
+        getRecentGifs(tag, limit, CachePolicy.NETWORK_ONLY, callback);
+    }
+
+    /**
+     * Fetch most recent gifs, optionally limited by tag. Returns 10 results.
+     * Additional GIF size data can be looked up by using the get GIF by id.
+     * <p>
+     * With {@link CachePolicy#STALE_WHILE_REVALIDATE} the last gifs received
+     * for the same tag and limit are returned immediately. If they are older
+     * than a minute the gifs are fetched again and the callback is called a
+     * second time only if the gifs changed. Use a {@link GiphyCachedCallback}
+     * to know if the cached gifs are stale.
+     * 
+     * @param tag (optional) limits recent GIFs to a specific tag. null or empty
+     *            to disable
+     * @param limit (optional) limits the number of results returned. -1 to
+     *            disable
+     * @param policy how to use the cached gifs
+     * @param callback to get the result
+     */
+    public static void getRecentGifs(String tag, int limit, CachePolicy policy,
+            GiphyCallback callback) {
+        mDefaultClient.getRecentGifs(tag, limit, policy, callback);
+    }
+
+    /**
+     * Fetch the recent gifs with the api key and the executor of the client
+     */
+    static void fetchRecentGifs(GiphyClient client, String tag, int limit, CachePolicy policy,
+            GiphyCallback callback) {
+        String key = client.buildRecentUrl(tag, limit);
+
+        ArrayList<String> cachedIds = null;
+        if (policy == CachePolicy.STALE_WHILE_REVALIDATE) {
+            CachedFeed cached = mFeedCache.get(key);
+            if (cached != null) {
+                boolean stale = cached.isStale();
+                Log.d(TAG, "Returning cached recent gifs. Stale: " + stale);
+                if (callback instanceof GiphyCachedCallback)
+                    ((GiphyCachedCallback) callback).onCachedResult(
+                            new ArrayList<GifInfo>(cached.mGifs), stale);
+                else if (callback != null)
+                    callback.onResult(new ArrayList<GifInfo>(cached.mGifs));
+
+                if (!stale)
+                    return;
+                cachedIds = cached.mIds;
+            }
         }
+
         Log.d(TAG, "Fetching recent gifs");
-        new FetchInfo(url.toString(), callback).executeFetch();
+        FeedRequest request;
+        synchronized (mFeedRequests) {
+            request = mFeedRequests.get(key);
+            if (request != null) {
+                request.mWaiters.add(new FeedWaiter(callback, cachedIds));
+                return;
+            }
+            request = new FeedRequest(key);
+            request.mWaiters.add(new FeedWaiter(callback, cachedIds));
+            mFeedRequests.put(key, request);
+        }
+        try {
+            new FetchInfo(key, tag, null, request).executeFetch(client.getExecutor());
+        } catch (RejectedExecutionException e) {
+            synchronized (mFeedRequests) {
+                mFeedRequests.remove(key);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Fetch most recent gifs, optionally limited by tag, stopping the parsing
+     * of the response when the condition is met. Useful for previews that
+     * only need a few gifs. These requests are not cached.
+     * 
+     * @param tag (optional) limits recent GIFs to a specific tag. null or empty
+     *            to disable
+     * @param limit (optional) limits the number of results returned. -1 to
+     *            use the max items of the condition, if any
+     * @param stopCondition when to stop parsing the gifs
+     * @param callback to get the result
+     */
+    public static void getRecentGifsPreview(String tag, int limit, StopCondition stopCondition,
+            GiphyCallback callback) {
+        mDefaultClient.getRecentGifsPreview(tag, limit, stopCondition, callback);
+    }
+
+    /**
+     * Fetch the recent gifs with the api key and the executor of the client,
+     * stopping the parsing when the condition is met
+     */
+    static void fetchRecentGifsPreview(GiphyClient client, String tag, int limit,
+            StopCondition stopCondition, GiphyCallback callback) {
+        if (limit == -1 && stopCondition != null)
+            limit = stopCondition.getMaxItems();
+
+        Log.d(TAG, "Fetching recent gifs with stop condition");
+        new FetchInfo(client.buildRecentUrl(tag, limit), tag, stopCondition, callback)
+                .executeFetch(client.getExecutor());
     }
 
     /**
@@ -119,59 +371,196 @@ public class Giphy {
      * @param callback to get the result
      */
     public static void translateWordToGif(String term, int limit, GiphyCallback callback) {
-        StringBuilder url = new StringBuilder(HOST);
-        url.append(RECENT_END_POINT);
-        url.append(KEY_APIKEY);
-        url.append(mApiKey);
-        url.append(KEY_WORD);
-        url.append(term);
-        if (limit != -1) {
-            url.append(KEY_LIMIT);
-            url.append(limit);
-        }
+        mDefaultClient.translateWordToGif(term, limit, callback);
+    }
+
+    /**
+     * Translates the term to gifs, stopping the parsing of the response when
+     * the condition is met.
+     * 
+     * @param term that you want to represents with a GIF
+     * @param limit (optional) limits the number of results returned. -1 to
+     *            use the max items of the condition, if any
+     * @param stopCondition (optional) when to stop parsing the gifs
+     * @param callback to get the result
+     * @see #translateWordToGif(String, int, GiphyCallback)
+     */
+    public static void translateWordToGifPreview(String term, int limit,
+            StopCondition stopCondition, GiphyCallback callback) {
+        mDefaultClient.translateWordToGifPreview(term, limit, stopCondition, callback);
+    }
+
+    /**
+     * Translates the term with the api key and the executor of the client
+     */
+    static void fetchTranslation(GiphyClient client, String term, int limit,
+            StopCondition stopCondition, GiphyCallback callback) {
+        if (limit == -1 && stopCondition != null)
+            limit = stopCondition.getMaxItems();
 
         Log.d(TAG, "Translate term \"" + term + "\" to a gif");
-        new FetchInfo(url.toString(), callback).executeFetch();
+        new FetchInfo(client.buildTranslateUrl(term, limit), term, stopCondition, callback)
+                .executeFetch(client.getExecutor());
+    }
+
+    /**
+     * Builds the url of {@link #getRecentGifs(String, int, GiphyCallback)}
+     * with the default client, for the benchmarks and the load test.
+     */
+    public static String buildRecentUrl(String tag, int limit) {
+        return mDefaultClient.buildRecentUrl(tag, limit);
+    }
+
+    /**
+     * Builds the url of {@link #translateWordToGif(String, int, GiphyCallback)}
+     * with the default client, for the benchmarks and the load test.
+     */
+    public static String buildTranslateUrl(String term, int limit) {
+        return mDefaultClient.buildTranslateUrl(term, limit);
     }
 
     /**
-     * Fetch Info from the server, parse it and return it
+     * Approximate bytes retained by the gif, with its images and strings. The
+     * gifs shared with other caches are counted in all of them.
+     */
+    private static long sizeOf(GifInfo gif) {
+        if (gif == null)
+            return 0;
+
+        long size = OBJECT_SIZE + sizeOf(gif.type) + sizeOf(gif.id) + sizeOf(gif.slug)
+                + sizeOf(gif.url) + sizeOf(gif.urlBitly) + sizeOf(gif.urlBitlyUrl)
+                + sizeOf(gif.urlBitlyTiled) + sizeOf(gif.urlEmbed) + sizeOf(gif.importDate);
+        GifImages images = gif.gifImages;
+        if (images != null) {
+            size += OBJECT_SIZE + sizeOf(images.imageFixedHeight)
+                    + sizeOf(images.imageFixedHeightStill)
+                    + sizeOf(images.imageFixedHeightDownsampled) + sizeOf(images.imageFixedWidth)
+                    + sizeOf(images.imagFixedWidthStill)
+                    + sizeOf(images.imageFixedWidthDownsampled) + sizeOf(images.imageOriginal);
+        }
+        return size;
+    }
+
+    private static long sizeOf(GifImage image) {
+        if (image == null)
+            return 0;
+        return OBJECT_SIZE + sizeOf(image.url) + sizeOf(image.width) + sizeOf(image.height)
+                + sizeOf(image.size) + sizeOf(image.frames);
+    }
+
+    private static long sizeOf(String string) {
+        return string == null ? 0 : OBJECT_SIZE + 2 * string.length();
+    }
+
+    /**
+     * Fetch Info from the server, parse it and return it. The callback is
+     * called once whatever the outcome, also if the task fails or is
+     * cancelled.
      * 
      * @author Marcos Trujillo
      */
     private static class FetchInfo extends FetchInfoTask<GiphyInfo> {
         private static final int TRAFFIC_STATS_TAG = 0xBBBB; // For DDMS debug
         private final GiphyCallback mCallback;
+        private final String mTerm;
+        // Not initialized, onError can be called from the super constructor
+        private boolean mFinished;
 
-        private FetchInfo(String url, GiphyCallback callback) {
+        /**
+         * @param url to fetch
+         * @param term (optional) tag or word searched, to index the result
+         * @param stopCondition (optional) to stop parsing the response
+         * @param callback
+         */
+        private FetchInfo(String url, String term, final StopCondition stopCondition,
+                GiphyCallback callback) {
             super(url);
-            enableJsonParsing(GiphyInfo.class);
+            if (stopCondition == null) {
+                enableJsonParsing(GiphyInfo.class);
+            } else {
+                enableStreamParsing(new FetchInfoStreamParser<GiphyInfo>() {
+                    @Override
+                    public GiphyInfo onParse(InputStream in) throws IOException {
+                        return GiphyInfoParser.parse(in, stopCondition);
+                    }
+                });
+            }
             setTrafficStatsTag(TRAFFIC_STATS_TAG);
             mCallback = callback;
+            mTerm = term;
+        }
+
+        @Override
+        protected GiphyInfo doInBackground(String... url) {
+            try {
+                GiphyInfo result = super.doInBackground(url);
+                if (result == null || result.gifList == null)
+                    return result;
+
+                // Indexed here to not write the index in the UI thread
+                GifIndex index = mIndex;
+                if (index != null)
+                    index.add(result.gifList, mTerm);
+                return result;
+            } catch (RuntimeException e) {
+                // The scheduler would only log it, the callback must be called
+                onError(ERROR_IO_EXCEPTION, "Exception: " + e.getMessage());
+                return null;
+            }
+        }
+
+        /**
+         * @return false if the callback was already called
+         */
+        private synchronized boolean finish() {
+            if (mFinished)
+                return false;
+            mFinished = true;
+            return true;
+        }
+
+        @Override
+        protected void onPostExecute(GiphyInfo result) {
+            // A null result without error, like a "null" body, is empty too
+            if (result == null)
+                onResult(null);
+            else
+                super.onPostExecute(result);
+        }
+
+        @Override
+        protected void onCancelled() {
+            onError(ERROR_IO_EXCEPTION, "Cancelled");
         }
 
         @Override
         protected void onResult(GiphyInfo result) {
+            if (!finish())
+                return;
+
             if (mCallback == null) {
                 Log.w(TAG, "Empty callback, imposible to return the GIFs");
                 return;
             }
 
-            if (result == null) {
+            if (result == null || result.meta == null) {
                 Log.e(TAG, "Empty response");
                 mCallback.onResult(new ArrayList<GifInfo>());
+                return;
             }
 
             if (result.meta.status != 200) {
                 Log.e(TAG, "Empty Response. Status:" + result.meta.status + " message: "
                         + result.meta.message);
                 mCallback.onResult(new ArrayList<GifInfo>());
+                return;
             }
 
             if (result.meta.code != null) {
                 Log.e(TAG, "Empty Response. Code:" + result.meta.code + " message: "
                         + result.meta.errorMessage);
                 mCallback.onResult(new ArrayList<GifInfo>());
+                return;
             }
 
             Log.d(TAG, result.toString());
@@ -180,6 +569,9 @@ public class Giphy {
 
         @Override
         protected void onError(int type, String message) {
+            if (!finish())
+                return;
+
             Log.e(TAG, "Error fetching GIFs. Message: " + message);
             if (mCallback != null)
                 mCallback.onResult(new ArrayList<GifInfo>());
@@ -187,6 +579,83 @@ public class Giphy {
 
     }
 
+    /**
+     * Recent gifs received for an url
+     */
+    private static class CachedFeed {
+        private final ArrayList<GifInfo> mGifs;
+        private final ArrayList<String> mIds;
+        private final long mTime;
+        private final long mSize;
+
+        private CachedFeed(ArrayList<GifInfo> gifs, ArrayList<String> ids) {
+            mGifs = gifs;
+            mIds = ids;
+            mTime = SystemClock.elapsedRealtime();
+            long size = OBJECT_SIZE + 2 * ARRAY_LIST_SIZE;
+            for (GifInfo gif : gifs) {
+                size += sizeOf(gif) + 2 * REFERENCE_SIZE;
+            }
+            mSize = size;
+        }
+
+        private boolean isStale() {
+            return SystemClock.elapsedRealtime() - mTime > FEED_MAX_AGE;
+        }
+    }
+
+    /**
+     * Callback waiting for a feed request
+     */
+    private static class FeedWaiter {
+        private final GiphyCallback mCallback;
+        private final ArrayList<String> mCachedIds; // null if nothing returned
+
+        private FeedWaiter(GiphyCallback callback, ArrayList<String> cachedIds) {
+            mCallback = callback;
+            mCachedIds = cachedIds;
+        }
+    }
+
+    /**
+     * Feed request shared by all the callbacks that requested the same url
+     * while it was in progress. Caches the result and returns it to the
+     * callbacks that didn't receive the same gifs from the cache.
+     */
+    private static class FeedRequest implements GiphyCallback {
+        private final String mUrl;
+        private final ArrayList<FeedWaiter> mWaiters = new ArrayList<FeedWaiter>();
+
+        private FeedRequest(String url) {
+            mUrl = url;
+        }
+
+        @Override
+        public void onResult(ArrayList<GifInfo> result) {
+            synchronized (mFeedRequests) {
+                mFeedRequests.remove(mUrl);
+            }
+
+            // An empty result is an error, the cached gifs are still valid
+            ArrayList<String> ids = new ArrayList<String>(result.size());
+            for (GifInfo gif : result) {
+                ids.add(gif.id);
+            }
+            if (!result.isEmpty())
+                mFeedCache.put(mUrl, new CachedFeed(result, ids));
+
+            for (FeedWaiter waiter : mWaiters) {
+                if (waiter.mCallback == null)
+                    continue;
+                // Already returned from the cache
+                if (waiter.mCachedIds != null
+                        && (result.isEmpty() || waiter.mCachedIds.equals(ids)))
+                    continue;
+                waiter.mCallback.onResult(new ArrayList<GifInfo>(result));
+            }
+        }
+    }
+
     /**
      * Callback to get the results of the petitions
      * 
@@ -195,4 +664,20 @@ public class Giphy {
     public static interface GiphyCallback {
         public void onResult(ArrayList<GifInfo> result);
     }
+
+    /**
+     * Callback that also receives the cached results of
+     * {@link CachePolicy#STALE_WHILE_REVALIDATE}
+     */
+    public static interface GiphyCachedCallback extends GiphyCallback {
+        /**
+         * Called immediately with the cached gifs. If they are stale
+         * {@link #onResult(ArrayList)} is called later only if the fetched
+         * gifs are different.
+         * 
+         * @param result cached gifs
+         * @param stale true if the gifs are being fetched again
+         */
+        public void onCachedResult(ArrayList<GifInfo> result, boolean stale);
+    }
 }
@@ -0,0 +1,260 @@
+package com.beefsoft.giphyapi;
+
+import com.beefsoft.giphyapi.Giphy.CachePolicy;
+import com.beefsoft.giphyapi.Giphy.GiphyCallback;
+import com.beefsoft.giphyapi.data.StopCondition;
+import com.beefsoft.giphyapi.utils.FairScheduler;
+import com.beefsoft.giphyapi.utils.FairScheduler.Tenant;
+import com.beefsoft.giphyapi.utils.FairScheduler.TenantStats;
+
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+
+/**
+ * Client of the Giphy api with its own api key, host and scheduling. Several
+ * clients can be used at the same time, for example one per feature with a
+ * different api key. All of them share the connections, the caches and the
+ * worker threads. The threads are shared with weighted fair queuing and every
+ * client can have a quota, so a client with a lot of requests doesn't delay
+ * the others.
+ * <p>
+ * The static methods of {@link Giphy} use a default client. The other
+ * clients must be closed with {@link #close()} when they are not needed, they
+ * are kept by the shared scheduler until then.
+ * <p>
+ * Usage:
+ *
+ * <pre class="prettyprint">
+ * GiphyClient search = new GiphyClient(&quot;search&quot;, apiKey).setWeight(2).setQuota(5, 10);
+ * search.translateWordToGif(&quot;superman&quot;, callback);
+ * Log.d(TAG, search.getStats().toString());
+ * </pre>
+ *
+ * @author Marcos Trujillo
+ */
+public class GiphyClient {
+    static final String DEFAULT_HOST = "http://api.giphy.com/";
+    private static final String RECENT_END_POINT = "/v1/gifs/recent";
+    private static final String TRANSLATE_END_POINT = "/v1/gifs/translate";
+
+    private static final String KEY_APIKEY = "?api_key=";
+    private static final String KEY_TAG = "&tag=";
+    private static final String KEY_LIMIT = "&limit=";
+    private static final String KEY_WORD = "&s=";
+
+    private static final int SCHEDULER_THREADS = 4;
+    private static final FairScheduler mScheduler = new FairScheduler(SCHEDULER_THREADS);
+
+    private final Tenant mTenant;
+    private final boolean mDefault;
+    private volatile String mApiKey;
+    private volatile String mHost = DEFAULT_HOST;
+
+    /**
+     * Creates a client with weight 1 and without quota
+     *
+     * @param name to identify the client in the stats
+     * @param apiKey
+     */
+    public GiphyClient(String name, String apiKey) {
+        // Checked before the tenant is added, it would never be removed
+        this(name, checkApiKey(apiKey), false);
+    }
+
+    /**
+     * Client without api key, used for the default client until Giphy is
+     * initialized
+     *
+     * @param name to identify the client in the stats
+     * @param isDefault true for the default client, that can't be closed
+     */
+    GiphyClient(String name, boolean isDefault) {
+        this(name, null, isDefault);
+    }
+
+    private GiphyClient(String name, String apiKey, boolean isDefault) {
+        mApiKey = apiKey;
+        mDefault = isDefault;
+        mTenant = mScheduler.addTenant(name, 1, 0, 1);
+    }
+
+    private static String checkApiKey(String apiKey) {
+        if (apiKey == null || "".equals(apiKey))
+            throw new NullPointerException("Invalid ApiKey");
+        return apiKey;
+    }
+
+    void setApiKey(String apiKey) {
+        mApiKey = apiKey;
+    }
+
+    /**
+     * Sets the base url of the api, for example to use a proxy or a stub
+     * server. By default {@value #DEFAULT_HOST}
+     *
+     * @param host base url, like "http://api.giphy.com/"
+     */
+    public GiphyClient setHost(String host) {
+        if (host == null || "".equals(host))
+            throw new NullPointerException("Invalid host");
+
+        mHost = host;
+        return this;
+    }
+
+    public String getHost() {
+        return mHost;
+    }
+
+    /**
+     * Share of the worker threads compared to the other clients while all of
+     * them have requests waiting. By default 1.
+     *
+     * @param weight 1 or more
+     */
+    public GiphyClient setWeight(int weight) {
+        mTenant.setWeight(weight);
+        return this;
+    }
+
+    /**
+     * Limits the rate of requests of the client. The requests over the quota
+     * wait until there is quota.
+     *
+     * @param requestsPerSecond 0 to disable the quota
+     * @param burst requests that can be made at once, 1 or more
+     */
+    public GiphyClient setQuota(double requestsPerSecond, int burst) {
+        mTenant.setQuota(requestsPerSecond, burst);
+        return this;
+    }
+
+    /**
+     * Throughput and time waited in the queue by the requests of the client
+     */
+    public TenantStats getStats() {
+        return mTenant.getStats();
+    }
+
+    /**
+     * Releases the client. The requests already made are completed, new
+     * requests throw a RejectedExecutionException.
+     *
+     * @throws IllegalStateException if it is the default client
+     */
+    public void close() {
+        if (mDefault)
+            throw new IllegalStateException("The default client can't be closed");
+
+        mScheduler.removeTenant(mTenant);
+    }
+
+    /**
+     * Stats of all the clients, the default one included
+     */
+    public static ArrayList<TenantStats> getAllStats() {
+        return mScheduler.getStats();
+    }
+
+    /**
+     * @see Giphy#getRecentGifs(GiphyCallback)
+     */
+    public void getRecentGifs(GiphyCallback callback) {
+        getRecentGifs(null, -1, callback);
+    }
+
+    /**
+     * @see Giphy#getRecentGifs(String, GiphyCallback)
+     */
+    public void getRecentGifs(String tag, GiphyCallback callback) {
+        getRecentGifs(tag, -1, callback);
+    }
+
+    /**
+     * @see Giphy#getRecentGifs(String, int, GiphyCallback)
+     */
+    public void getRecentGifs(String tag, int limit, GiphyCallback callback) {
+        getRecentGifs(tag, limit, CachePolicy.NETWORK_ONLY, callback);
+    }
+
+    /**
+     * @see Giphy#getRecentGifs(String, int, CachePolicy, GiphyCallback)
+     */
+    public void getRecentGifs(String tag, int limit, CachePolicy policy, GiphyCallback callback) {
+        Giphy.fetchRecentGifs(this, tag, limit, policy, callback);
+    }
+
+    /**
+     * @see Giphy#getRecentGifsPreview(String, int, StopCondition, GiphyCallback)
+     */
+    public void getRecentGifsPreview(String tag, int limit, StopCondition stopCondition,
+            GiphyCallback callback) {
+        Giphy.fetchRecentGifsPreview(this, tag, limit, stopCondition, callback);
+    }
+
+    /**
+     * @see Giphy#translateWordToGif(String, GiphyCallback)
+     */
+    public void translateWordToGif(String term, GiphyCallback callback) {
+        translateWordToGif(term, -1, callback);
+    }
+
+    /**
+     * @see Giphy#translateWordToGif(String, int, GiphyCallback)
+     */
+    public void translateWordToGif(String term, int limit, GiphyCallback callback) {
+        Giphy.fetchTranslation(this, term, limit, null, callback);
+    }
+
+    /**
+     * @see Giphy#translateWordToGifPreview(String, int, StopCondition,
+     *      GiphyCallback)
+     */
+    public void translateWordToGifPreview(String term, int limit, StopCondition stopCondition,
+            GiphyCallback callback) {
+        Giphy.fetchTranslation(this, term, limit, stopCondition, callback);
+    }
+
+    /**
+     * Executor of the requests of this client
+     */
+    Executor getExecutor() {
+        return mTenant;
+    }
+
+    /**
+     * Builds the url of {@link #getRecentGifs(String, int, GiphyCallback)}
+     */
+    String buildRecentUrl(String tag, int limit) {
+        StringBuilder url = new StringBuilder(mHost);
+        url.append(RECENT_END_POINT);
+        url.append(KEY_APIKEY);
+        url.append(mApiKey);
+        if (tag != null && !"".equals(tag)) {
+            url.append(KEY_TAG);
+            url.append(tag);
+        }
+        if (limit != -1) {
+            url.append(KEY_LIMIT);
+            url.append(limit);
+        }
+        return url.toString();
+    }
+
+    /**
+     * Builds the url of {@link #translateWordToGif(String, int, GiphyCallback)}
+     */
+    String buildTranslateUrl(String term, int limit) {
+        StringBuilder url = new StringBuilder(mHost);
+        url.append(TRANSLATE_END_POINT);
+        url.append(KEY_APIKEY);
+        url.append(mApiKey);
+        url.append(KEY_WORD);
+        url.append(term);
+        if (limit != -1) {
+            url.append(KEY_LIMIT);
+            url.append(limit);
+        }
+        return url.toString();
+    }
+}
@@ -0,0 +1,101 @@
+package com.beefsoft.giphyapi.data;
+
+import com.beefsoft.giphyapi.data.GiphyInfo.GifImages;
+import com.beefsoft.giphyapi.data.GiphyInfo.GifInfo;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.deser.ResolvableDeserializer;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+
+import java.io.IOException;
+
+/**
+ * Binds a {@link GifInfo} resolving it in the {@link GifInfoStore} as soon as
+ * its id is read. If the gif is already in memory the rest of the object is
+ * skipped, so a repeated gif doesn't allocate its images and url strings
+ * again. The id comes before the images in the responses of the api, if it
+ * comes after them the gif is bound completely and interned at the end.
+ *
+ * @author Marcos Trujillo
+ */
+final class GifInfoDeserializer extends StdDeserializer<GifInfo> implements
+        ResolvableDeserializer {
+    private static final long serialVersionUID = 1L;
+
+    private JsonDeserializer<Object> mImagesDeserializer;
+
+    GifInfoDeserializer() {
+        super(GifInfo.class);
+    }
+
+    @Override
+    public void resolve(DeserializationContext context) throws JsonMappingException {
+        mImagesDeserializer = context.findRootValueDeserializer(context
+                .constructType(GifImages.class));
+    }
+
+    @Override
+    public GifInfo deserialize(JsonParser parser, DeserializationContext context)
+            throws IOException {
+        JsonToken token = parser.getCurrentToken();
+        if (token == JsonToken.START_OBJECT)
+            token = parser.nextToken();
+        if (token != JsonToken.FIELD_NAME && token != JsonToken.END_OBJECT)
+            throw context.mappingException(GifInfo.class);
+
+        GifInfo gif = new GifInfo();
+        for (; token == JsonToken.FIELD_NAME; token = parser.nextToken()) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if ("images".equals(field)) {
+                gif.gifImages = value == JsonToken.VALUE_NULL ? null
+                        : (GifImages) mImagesDeserializer.deserialize(parser, context);
+                continue;
+            }
+            if (value == JsonToken.START_OBJECT || value == JsonToken.START_ARRAY) {
+                parser.skipChildren();
+                continue;
+            }
+
+            String text = value == JsonToken.VALUE_NULL ? null : parser.getText();
+            if ("id".equals(field)) {
+                gif.id = text;
+                GifInfo canonical = GifInfoStore.get(text);
+                if (canonical != null) {
+                    skipObject(parser);
+                    return canonical;
+                }
+            } else if ("type".equals(field)) {
+                gif.type = text;
+            } else if ("slug".equals(field)) {
+                gif.slug = text;
+            } else if ("url".equals(field)) {
+                gif.url = text;
+            } else if ("bitly_gif_url".equals(field)) {
+                gif.urlBitly = text;
+            } else if ("bitly_fullscreen_url".equals(field)) {
+                gif.urlBitlyUrl = text;
+            } else if ("bitly_tiled_url".equals(field)) {
+                gif.urlBitlyTiled = text;
+            } else if ("embed_url".equals(field)) {
+                gif.urlEmbed = text;
+            } else if ("import_date".equals(field)) {
+                gif.importDate = text;
+            }
+        }
+        return GifInfoStore.intern(gif);
+    }
+
+    /**
+     * Skips the rest of the fields of the current object, until its end
+     */
+    private static void skipObject(JsonParser parser) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            parser.nextToken();
+            parser.skipChildren();
+        }
+    }
+}
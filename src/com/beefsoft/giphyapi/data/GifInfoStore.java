@@ -0,0 +1,117 @@
+package com.beefsoft.giphyapi.data;
+
+import com.beefsoft.giphyapi.data.GiphyInfo.GifInfo;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.List;
+import java.util.ListIterator;
+
+/**
+ * Canonical instances of the {@link GifInfo} by id. The recent, tag and
+ * translate responses return the same gifs many times, with this store all
+ * of them share the same GifInfo, with its images and url strings, instead of
+ * keeping a copy per response.
+ * <p>
+ * The gifs are weakly referenced, a gif is removed from the store when
+ * nobody else uses it.
+ *
+ * @author Marcos Trujillo
+ */
+public final class GifInfoStore {
+    private static final HashMap<String, GifReference> mGifs = new HashMap<String, GifReference>();
+    private static final ReferenceQueue<GifInfo> mQueue = new ReferenceQueue<GifInfo>();
+
+    private GifInfoStore() {
+    }
+
+    /**
+     * Returns the canonical instance of the gif. If there is no other gif
+     * with the same id the gif received becomes the canonical one.
+     *
+     * @param gif
+     * @return the canonical gif, or the same gif if it doesn't have id
+     */
+    public static GifInfo intern(GifInfo gif) {
+        if (gif == null || gif.id == null)
+            return gif;
+
+        synchronized (mGifs) {
+            expungeStaleGifs();
+            GifReference reference = mGifs.get(gif.id);
+            GifInfo canonical = reference != null ? reference.get() : null;
+            if (canonical != null)
+                return canonical;
+
+            mGifs.put(gif.id, new GifReference(gif, mQueue));
+            return gif;
+        }
+    }
+
+    /**
+     * Returns the canonical instance of the gif with the id
+     *
+     * @param id
+     * @return the canonical gif, or null if there is no gif with the id in
+     *         memory
+     */
+    public static GifInfo get(String id) {
+        if (id == null)
+            return null;
+
+        synchronized (mGifs) {
+            expungeStaleGifs();
+            GifReference reference = mGifs.get(id);
+            return reference != null ? reference.get() : null;
+        }
+    }
+
+    /**
+     * Replaces every gif of the list with its canonical instance
+     *
+     * @param gifs
+     */
+    public static void intern(List<GifInfo> gifs) {
+        if (gifs == null)
+            return;
+
+        ListIterator<GifInfo> iterator = gifs.listIterator();
+        while (iterator.hasNext()) {
+            GifInfo gif = iterator.next();
+            GifInfo canonical = intern(gif);
+            if (canonical != gif)
+                iterator.set(canonical);
+        }
+    }
+
+    /**
+     * Number of gifs in the store, for debug purposes
+     */
+    public static int size() {
+        synchronized (mGifs) {
+            expungeStaleGifs();
+            return mGifs.size();
+        }
+    }
+
+    /**
+     * Removes the entries of the gifs already collected
+     */
+    private static void expungeStaleGifs() {
+        GifReference reference;
+        while ((reference = (GifReference) mQueue.poll()) != null) {
+            if (mGifs.get(reference.mId) == reference)
+                mGifs.remove(reference.mId);
+        }
+    }
+
+    private static class GifReference extends WeakReference<GifInfo> {
+        private final String mId;
+
+        private GifReference(GifInfo gif, ReferenceQueue<GifInfo> queue) {
+            super(gif, queue);
+            mId = gif.id;
+        }
+    }
+}
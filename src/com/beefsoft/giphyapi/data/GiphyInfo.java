@@ -3,6 +3,7 @@ package com.beefsoft.giphyapi.data;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 
 import java.util.ArrayList;
 
@@ -13,22 +14,40 @@ import java.util.ArrayList;
  */
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class GiphyInfo {
-    @JsonProperty("data")
     public ArrayList<GifInfo> gifList = new ArrayList<GifInfo>();
     @JsonProperty("meta")
     public Meta meta;
 
+    /**
+     * Sets the gifs parsed. They are already the canonical instances of the
+     * {@link GifInfoStore}, resolved by the {@link GifInfoDeserializer} while
+     * they were parsed.
+     * 
+     * @param gifList
+     */
+    @JsonProperty("data")
+    public void setGifList(ArrayList<GifInfo> gifList) {
+        this.gifList = gifList;
+    }
+
     @Override
     public String toString() {
         return "GiphyInfo [gifList=" + gifList + ", meta=" + meta + "]";
     }
 
+    /**
+     * Bound by the {@link GifInfoDeserializer}, the gifs already in memory are
+     * not bound again
+     */
     @JsonIgnoreProperties(ignoreUnknown = true)
+    @JsonDeserialize(using = GifInfoDeserializer.class)
     public static class GifInfo {
         @JsonProperty("type")
         public String type;
         @JsonProperty("id")
         public String id;
+        @JsonProperty("slug")
+        public String slug;
         @JsonProperty("url")
         public String url;
         @JsonProperty("bitly_gif_url")
@@ -46,8 +65,8 @@ public class GiphyInfo {
 
         @Override
         public String toString() {
-            return "GifInfo [type=" + type + ", id=" + id + ", url=" + url + ", urlBitly="
-                    + urlBitly + ", urlBitlyUrl=" + urlBitlyUrl + ", urlBitlyTiled="
+            return "GifInfo [type=" + type + ", id=" + id + ", slug=" + slug + ", url=" + url
+                    + ", urlBitly=" + urlBitly + ", urlBitlyUrl=" + urlBitlyUrl + ", urlBitlyTiled="
                     + urlBitlyTiled + ", urlEmbed=" + urlEmbed + ", importDate=" + importDate
                     + ", gifImages=" + gifImages + "]";
         }
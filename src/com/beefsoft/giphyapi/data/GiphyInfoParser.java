@@ -0,0 +1,90 @@
+package com.beefsoft.giphyapi.data;
+
+import com.beefsoft.giphyapi.data.GiphyInfo.GifInfo;
+import com.beefsoft.giphyapi.data.GiphyInfo.Meta;
+import com.beefsoft.giphyapi.utils.FetchInfoTask;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Streaming parser of the {@link GiphyInfo} responses. The gifs are bound one
+ * by one while the response is read, and the parsing stops when the
+ * {@link StopCondition} is met, without reading the rest of the response.
+ * 
+ * @author Marcos Trujillo
+ */
+public final class GiphyInfoParser {
+
+    private GiphyInfoParser() {
+    }
+
+    /**
+     * Parses the response. The stream is not closed.
+     * 
+     * @param in response
+     * @param condition (optional) to stop parsing. null to parse all the gifs
+     * @return the info parsed
+     * @throws IOException
+     */
+    public static GiphyInfo parse(InputStream in, StopCondition condition) throws IOException {
+        ObjectReader gifReader = FetchInfoTask.getReader(GifInfo.class);
+        ObjectReader metaReader = FetchInfoTask.getReader(Meta.class);
+        JsonParser parser = gifReader.getFactory().createParser(in);
+        parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+
+        GiphyInfo info = new GiphyInfo();
+        try {
+            if (parser.nextToken() != JsonToken.START_OBJECT)
+                throw new JsonParseException("Expected an object", parser.getCurrentLocation());
+
+            boolean stopped = false;
+            while (!stopped && parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("data".equals(field) && value == JsonToken.START_ARRAY) {
+                    JsonToken item;
+                    while ((item = parser.nextToken()) != JsonToken.END_ARRAY) {
+                        if (item == null)
+                            throw new JsonParseException("Unexpected end of the gifs",
+                                    parser.getCurrentLocation());
+                        // Null elements and other values are not gifs
+                        if (item != JsonToken.START_OBJECT) {
+                            parser.skipChildren();
+                            continue;
+                        }
+                        GifInfo gif = gifReader.<GifInfo> readValue(parser);
+                        info.gifList.add(gif);
+                        if (condition != null && condition.isMet(gif, info.gifList.size())) {
+                            stopped = true;
+                            break;
+                        }
+                    }
+                } else if ("data".equals(field) && value == JsonToken.START_OBJECT) {
+                    // The translate endpoint returns a single gif
+                    GifInfo gif = gifReader.<GifInfo> readValue(parser);
+                    info.gifList.add(gif);
+                    stopped = condition != null && condition.isMet(gif, info.gifList.size());
+                } else if ("meta".equals(field) && value == JsonToken.START_OBJECT) {
+                    info.meta = metaReader.readValue(parser);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+
+            // The meta is after the gifs, the response was OK if it had them
+            if (stopped && info.meta == null) {
+                info.meta = new Meta();
+                info.meta.status = 200;
+                info.meta.message = "OK";
+            }
+        } finally {
+            parser.close();
+        }
+        return info;
+    }
+}
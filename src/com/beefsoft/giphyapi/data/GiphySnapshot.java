@@ -0,0 +1,419 @@
+package com.beefsoft.giphyapi.data;
+
+import com.beefsoft.giphyapi.data.GiphyInfo.GifImage;
+import com.beefsoft.giphyapi.data.GiphyInfo.GifImages;
+import com.beefsoft.giphyapi.data.GiphyInfo.GifInfo;
+import com.beefsoft.giphyapi.data.GiphyInfo.Meta;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Compact binary copy of a {@link GiphyInfo}, used to show the last feed on
+ * launch without parsing the json again.
+ * <p>
+ * Format (big endian):
+ * <ul>
+ * <li>Header: magic, version, item count, string count, offset of the string
+ * table and the {@link Meta} info.
+ * <li>Items: one fixed size record per {@link GifInfo}. Strings are stored as
+ * an index of the string table and the dimensions of the images as ints, so
+ * any item can be read without reading the previous ones. The dimensions that
+ * are not a plain positive number are stored in the string table, as the
+ * negative index -2 - index.
+ * <li>String table: the offset of every string followed by the strings, each
+ * one prefixed with its length and encoded in UTF-8.
+ * </ul>
+ * The snapshot is read from a memory mapped file and the items are
+ * materialized when they are requested, so the first screen of items can be
+ * shown without decoding the whole file.
+ * <p>
+ * Usage:
+ *
+ * <pre class="prettyprint">
+ * GiphySnapshot.write(giphyInfo, file);
+ * ...
+ * GiphySnapshot snapshot = GiphySnapshot.open(file);
+ * GiphyInfo firstScreen = snapshot.toGiphyInfo(6);
+ * </pre>
+ *
+ * @author Marcos Trujillo
+ */
+public class GiphySnapshot {
+    public static final int MAGIC = 0x47495048; // "GIPH"
+    public static final int VERSION = 3;
+
+    private static final int NULL = -1;
+    private static final int NULL_INTEGER = Integer.MIN_VALUE;
+    private static final String CHARSET = "UTF-8";
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private static final int GIF_STRINGS = 9;
+    private static final int IMAGE_COUNT = 7;
+    private static final int IMAGE_SIZE = 5 * 4; // url, width, height, size, frames
+    private static final int RECORD_SIZE = GIF_STRINGS * 4 + IMAGE_COUNT * IMAGE_SIZE;
+    private static final int HEADER_SIZE = 5 * 4 + 5 * 4; // header + meta
+
+    private final ByteBuffer mBuffer;
+    private final int mItemCount;
+    private final int mStringCount;
+    private final int mStringTableOffset;
+    private final String[] mStrings;
+
+    private GiphySnapshot(ByteBuffer buffer) throws IOException {
+        mBuffer = buffer;
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+            throw new IOException("Not a Giphy snapshot");
+        if (buffer.getInt(4) != VERSION)
+            throw new IOException("Unsupported snapshot version " + buffer.getInt(4));
+
+        mItemCount = buffer.getInt(8);
+        mStringCount = buffer.getInt(12);
+        mStringTableOffset = buffer.getInt(16);
+        if (mItemCount < 0 || mStringCount < 0
+                || HEADER_SIZE + (long) mItemCount * RECORD_SIZE > mStringTableOffset
+                || mStringTableOffset + (long) mStringCount * 4 > buffer.limit())
+            throw new IOException("Corrupted Giphy snapshot");
+
+        // The strings are decoded later, a bad entry would throw then
+        long stringsStart = mStringTableOffset + (long) mStringCount * 4;
+        for (int i = 0; i < mStringCount; i++) {
+            int offset = buffer.getInt(mStringTableOffset + i * 4);
+            if (offset < stringsStart || offset + 4L > buffer.limit())
+                throw new IOException("Corrupted Giphy snapshot string " + i);
+            int length = buffer.getInt(offset);
+            if (length < 0 || offset + 4L + length > buffer.limit())
+                throw new IOException("Corrupted Giphy snapshot string " + i);
+        }
+
+        mStrings = new String[mStringCount];
+    }
+
+    /**
+     * Opens a snapshot mapping the file in memory. Only the header and the
+     * string table offsets are read.
+     *
+     * @param file written with {@link #write(GiphyInfo, File)}
+     * @throws IOException if the file is not a valid snapshot
+     */
+    public static GiphySnapshot open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            return new GiphySnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size()));
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Reads a snapshot from a buffer
+     *
+     * @param buffer with the content written by
+     *            {@link #write(GiphyInfo, OutputStream)}
+     * @throws IOException if the buffer is not a valid snapshot
+     */
+    public static GiphySnapshot wrap(ByteBuffer buffer) throws IOException {
+        return new GiphySnapshot(buffer);
+    }
+
+    /**
+     * Number of gifs of the snapshot
+     */
+    public int size() {
+        return mItemCount;
+    }
+
+    /**
+     * Materializes the gif at the position indicated. If the gif is already
+     * in memory the instance of the {@link GifInfoStore} is returned.
+     *
+     * @param index
+     */
+    public GifInfo getGif(int index) {
+        if (index < 0 || index >= mItemCount)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + mItemCount);
+
+        int position = HEADER_SIZE + index * RECORD_SIZE;
+        GifInfo gif = new GifInfo();
+        gif.type = readString(position);
+        gif.id = readString(position + 4);
+        gif.url = readString(position + 8);
+        gif.urlBitly = readString(position + 12);
+        gif.urlBitlyUrl = readString(position + 16);
+        gif.urlBitlyTiled = readString(position + 20);
+        gif.urlEmbed = readString(position + 24);
+        gif.importDate = readString(position + 28);
+        gif.slug = readString(position + 32);
+
+        position += GIF_STRINGS * 4;
+        GifImage[] images = new GifImage[IMAGE_COUNT];
+        boolean hasImages = false;
+        for (int i = 0; i < IMAGE_COUNT; i++) {
+            images[i] = readImage(position + i * IMAGE_SIZE);
+            hasImages |= images[i] != null;
+        }
+        if (hasImages) {
+            gif.gifImages = new GifImages();
+            gif.gifImages.imageFixedHeight = images[0];
+            gif.gifImages.imageFixedHeightStill = images[1];
+            gif.gifImages.imageFixedHeightDownsampled = images[2];
+            gif.gifImages.imageFixedWidth = images[3];
+            gif.gifImages.imagFixedWidthStill = images[4];
+            gif.gifImages.imageFixedWidthDownsampled = images[5];
+            gif.gifImages.imageOriginal = images[6];
+        }
+        return GifInfoStore.intern(gif);
+    }
+
+    /**
+     * Meta info stored with the snapshot
+     */
+    public Meta getMeta() {
+        Meta meta = new Meta();
+        meta.status = mBuffer.getInt(20);
+        meta.message = readString(24);
+        meta.errorType = readInteger(28);
+        meta.code = readInteger(32);
+        meta.errorMessage = readString(36);
+        return meta;
+    }
+
+    /**
+     * Materializes the whole snapshot
+     */
+    public GiphyInfo toGiphyInfo() {
+        return toGiphyInfo(mItemCount);
+    }
+
+    /**
+     * Materializes the first gifs of the snapshot
+     *
+     * @param maxItems max number of gifs to read
+     */
+    public GiphyInfo toGiphyInfo(int maxItems) {
+        int count = Math.min(Math.max(maxItems, 0), mItemCount);
+        GiphyInfo info = new GiphyInfo();
+        info.meta = getMeta();
+        info.gifList = new ArrayList<GifInfo>(count);
+        for (int i = 0; i < count; i++) {
+            info.gifList.add(getGif(i));
+        }
+        return info;
+    }
+
+    private GifImage readImage(int position) {
+        int url = mBuffer.getInt(position);
+        int width = mBuffer.getInt(position + 4);
+        int height = mBuffer.getInt(position + 8);
+        int size = mBuffer.getInt(position + 12);
+        int frames = mBuffer.getInt(position + 16);
+        if (url == NULL && width == NULL && height == NULL && size == NULL && frames == NULL)
+            return null;
+
+        GifImage image = new GifImage();
+        image.url = getString(url);
+        image.width = readDimension(width);
+        image.height = readDimension(height);
+        image.size = readDimension(size);
+        image.frames = readDimension(frames);
+        return image;
+    }
+
+    private Integer readInteger(int position) {
+        int value = mBuffer.getInt(position);
+        return value == NULL_INTEGER ? null : Integer.valueOf(value);
+    }
+
+    private String readString(int position) {
+        return getString(mBuffer.getInt(position));
+    }
+
+    /**
+     * Decodes a string of the table the first time it is requested
+     */
+    private String getString(int index) {
+        if (index < 0 || index >= mStringCount)
+            return null;
+
+        String string = mStrings[index];
+        if (string != null)
+            return string;
+
+        int offset = mBuffer.getInt(mStringTableOffset + index * 4);
+        int length = mBuffer.getInt(offset);
+        byte[] bytes = new byte[length];
+        ByteBuffer reader = mBuffer.duplicate();
+        reader.position(offset + 4);
+        reader.get(bytes);
+        try {
+            string = new String(bytes, CHARSET);
+        } catch (IOException e) {
+            // UTF-8 is always supported
+            throw new IllegalStateException(e);
+        }
+        mStrings[index] = string;
+        return string;
+    }
+
+    private String readDimension(int value) {
+        if (value == NULL)
+            return null;
+        return value >= 0 ? String.valueOf(value) : getString(-2 - value);
+    }
+
+    /**
+     * Writes the snapshot of the info into the file. It is written into a
+     * temporary file renamed when it is complete, so a crash never leaves a
+     * partial snapshot.
+     *
+     * @param info
+     * @param file
+     * @throws IOException
+     */
+    public static void write(GiphyInfo info, File file) throws IOException {
+        File tmpFile = new File(file.getPath() + TMP_SUFFIX);
+        try {
+            FileOutputStream out = new FileOutputStream(tmpFile);
+            try {
+                write(info, out);
+            } finally {
+                out.close();
+            }
+            if (!tmpFile.renameTo(file))
+                throw new IOException("Impossible to rename the snapshot " + file);
+        } catch (IOException e) {
+            tmpFile.delete();
+            throw e;
+        }
+    }
+
+    /**
+     * Writes the snapshot of the info into the stream. The stream is not
+     * closed.
+     *
+     * @param info
+     * @param out
+     * @throws IOException
+     */
+    public static void write(GiphyInfo info, OutputStream out) throws IOException {
+        ArrayList<GifInfo> gifs = info.gifList != null ? info.gifList : new ArrayList<GifInfo>();
+        Meta meta = info.meta != null ? info.meta : new Meta();
+        StringTable strings = new StringTable();
+
+        ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(gifs.size() * RECORD_SIZE);
+        DataOutputStream records = new DataOutputStream(recordBytes);
+        for (GifInfo gif : gifs) {
+            records.writeInt(strings.add(gif.type));
+            records.writeInt(strings.add(gif.id));
+            records.writeInt(strings.add(gif.url));
+            records.writeInt(strings.add(gif.urlBitly));
+            records.writeInt(strings.add(gif.urlBitlyUrl));
+            records.writeInt(strings.add(gif.urlBitlyTiled));
+            records.writeInt(strings.add(gif.urlEmbed));
+            records.writeInt(strings.add(gif.importDate));
+            records.writeInt(strings.add(gif.slug));
+
+            GifImages images = gif.gifImages != null ? gif.gifImages : new GifImages();
+            writeImage(records, strings, images.imageFixedHeight);
+            writeImage(records, strings, images.imageFixedHeightStill);
+            writeImage(records, strings, images.imageFixedHeightDownsampled);
+            writeImage(records, strings, images.imageFixedWidth);
+            writeImage(records, strings, images.imagFixedWidthStill);
+            writeImage(records, strings, images.imageFixedWidthDownsampled);
+            writeImage(records, strings, images.imageOriginal);
+        }
+        int messageIndex = strings.add(meta.message);
+        int errorMessageIndex = strings.add(meta.errorMessage);
+
+        int stringTableOffset = HEADER_SIZE + recordBytes.size();
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(gifs.size());
+        data.writeInt(strings.mValues.size());
+        data.writeInt(stringTableOffset);
+        data.writeInt(meta.status);
+        data.writeInt(messageIndex);
+        data.writeInt(meta.errorType != null ? meta.errorType : NULL_INTEGER);
+        data.writeInt(meta.code != null ? meta.code : NULL_INTEGER);
+        data.writeInt(errorMessageIndex);
+        recordBytes.writeTo(data);
+
+        int offset = stringTableOffset + strings.mValues.size() * 4;
+        for (byte[] value : strings.mValues) {
+            data.writeInt(offset);
+            offset += 4 + value.length;
+        }
+        for (byte[] value : strings.mValues) {
+            data.writeInt(value.length);
+            data.write(value);
+        }
+        data.flush();
+    }
+
+    private static void writeImage(DataOutputStream out, StringTable strings, GifImage image)
+            throws IOException {
+        if (image == null) {
+            for (int i = 0; i < IMAGE_SIZE / 4; i++) {
+                out.writeInt(NULL);
+            }
+            return;
+        }
+
+        out.writeInt(strings.add(image.url));
+        out.writeInt(writeDimension(strings, image.width));
+        out.writeInt(writeDimension(strings, image.height));
+        out.writeInt(writeDimension(strings, image.size));
+        out.writeInt(writeDimension(strings, image.frames));
+    }
+
+    /**
+     * The dimension as an int if it is read back as the same string, like
+     * "480". Otherwise, like "abc" or "007", its string as -2 - index.
+     */
+    private static int writeDimension(StringTable strings, String value) throws IOException {
+        if (value == null)
+            return NULL;
+
+        try {
+            int number = Integer.parseInt(value);
+            if (number >= 0 && value.equals(String.valueOf(number)))
+                return number;
+        } catch (NumberFormatException e) {
+            // Stored as a string
+        }
+        return -2 - strings.add(value);
+    }
+
+    /**
+     * Deduplicated strings of a snapshot being written
+     */
+    private static class StringTable {
+        private final HashMap<String, Integer> mIndexes = new HashMap<String, Integer>();
+        private final ArrayList<byte[]> mValues = new ArrayList<byte[]>();
+
+        private int add(String value) throws IOException {
+            if (value == null)
+                return NULL;
+
+            Integer index = mIndexes.get(value);
+            if (index == null) {
+                index = mValues.size();
+                mIndexes.put(value, index);
+                mValues.add(value.getBytes(CHARSET));
+            }
+            return index;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.beefsoft.giphyapi.data;
+
+import com.beefsoft.giphyapi.data.GiphyInfo.GifInfo;
+
+/**
+ * Condition to stop parsing a response before the end, when the caller
+ * doesn't need more gifs. For example, a preview of 4 tiles:
+ * 
+ * <pre class="prettyprint">
+ * Giphy.getRecentGifsPreview(null, -1, StopCondition.maxItems(4), callback);
+ * </pre>
+ * 
+ * @author Marcos Trujillo
+ */
+public abstract class StopCondition {
+
+    /**
+     * Called after every gif parsed
+     * 
+     * @param gif last gif parsed, included in the result
+     * @param count number of gifs parsed, this one included
+     * @return true to stop parsing
+     */
+    public abstract boolean isMet(GifInfo gif, int count);
+
+    /**
+     * Max number of gifs that the condition accepts, used to ask the server
+     * only for them
+     * 
+     * @return the number of gifs or -1 if unknown
+     */
+    public int getMaxItems() {
+        return -1;
+    }
+
+    /**
+     * Stops after the number of gifs indicated
+     * 
+     * @param maxItems
+     */
+    public static StopCondition maxItems(final int maxItems) {
+        if (maxItems <= 0)
+            throw new IllegalArgumentException("maxItems must be positive");
+
+        return new StopCondition() {
+            @Override
+            public boolean isMet(GifInfo gif, int count) {
+                return count >= maxItems;
+            }
+
+            @Override
+            public int getMaxItems() {
+                return maxItems;
+            }
+        };
+    }
+}
@@ -0,0 +1,81 @@
+package com.beefsoft.giphyapi.utils;
+
+/**
+ * Per thread pool of byte arrays used to read the http responses. Every
+ * AsyncTask worker keeps the biggest buffer it has used so the next response
+ * read by the same thread doesn't allocate a new one. No locks are needed
+ * because a buffer never leaves its thread.
+ * <p>
+ * Usage:
+ *
+ * <pre class="prettyprint">
+ * byte[] buffer = BufferPool.acquire(contentLength);
+ * try {
+ *     // Read into the buffer, call grow(...) if it is full
+ * } finally {
+ *     BufferPool.release(buffer);
+ * }
+ * </pre>
+ *
+ * @author Marcos Trujillo
+ */
+public final class BufferPool {
+    /** Size used when the response doesn't have a Content-Length */
+    public static final int DEFAULT_SIZE = 16 * 1024;
+    /** Bigger buffers are not kept to not retain too much memory per thread */
+    public static final int MAX_POOLED_SIZE = 256 * 1024;
+
+    private static final ThreadLocal<byte[]> sBuffer = new ThreadLocal<byte[]>();
+
+    private BufferPool() {
+    }
+
+    /**
+     * Returns a buffer with at least the size indicated. If the size is
+     * unknown (-1 or 0) the buffer will have at least {@link #DEFAULT_SIZE}
+     * bytes.
+     *
+     * @param sizeHint Expected size of the content, normally the
+     *            Content-Length of the response
+     * @return a buffer that must be returned with {@link #release(byte[])}
+     */
+    public static byte[] acquire(long sizeHint) {
+        int size = sizeHint > 0 && sizeHint < Integer.MAX_VALUE ? (int) sizeHint : DEFAULT_SIZE;
+        byte[] cached = sBuffer.get();
+        if (cached != null && cached.length >= size) {
+            sBuffer.set(null);
+            return cached;
+        }
+        return new byte[size];
+    }
+
+    /**
+     * Returns a bigger buffer with the content of the old one copied. The old
+     * buffer is released.
+     *
+     * @param buffer full buffer
+     * @param count bytes used of the buffer
+     * @return the new buffer
+     */
+    public static byte[] grow(byte[] buffer, int count) {
+        byte[] bigger = acquire(Math.max(buffer.length * 2L, DEFAULT_SIZE));
+        System.arraycopy(buffer, 0, bigger, 0, count);
+        release(buffer);
+        return bigger;
+    }
+
+    /**
+     * Returns the buffer to the pool of the current thread. The buffer
+     * shouldn't be used after this call.
+     *
+     * @param buffer
+     */
+    public static void release(byte[] buffer) {
+        if (buffer == null || buffer.length > MAX_POOLED_SIZE)
+            return;
+
+        byte[] cached = sBuffer.get();
+        if (cached == null || cached.length < buffer.length)
+            sBuffer.set(buffer);
+    }
+}
@@ -0,0 +1,361 @@
+package com.beefsoft.giphyapi.utils;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executor shared by several tenants, like clients with different api keys.
+ * Every tenant has its own queue and the worker threads take the tasks from
+ * the queues with weighted fair queuing, so a tenant that sends a lot of
+ * requests can't starve the others. A tenant with weight 2 gets twice the
+ * turns of a tenant with weight 1 while both have tasks waiting.
+ * <p>
+ * The tenants that are not needed anymore must be removed with
+ * {@link #removeTenant(Tenant)}.
+ * <p>
+ * Every tenant can have a quota, a token bucket that limits its rate of
+ * tasks. The tasks over the quota wait in the queue, they are never
+ * rejected.
+ * <p>
+ * Usage:
+ *
+ * <pre class="prettyprint">
+ * FairScheduler scheduler = new FairScheduler(4);
+ * Executor search = scheduler.addTenant("search", 2, 10, 5);
+ * task.executeOnExecutor(search, url);
+ * </pre>
+ *
+ * @author Marcos Trujillo
+ */
+public class FairScheduler {
+    private static final String TAG = "FairScheduler";
+    private static final String THREAD_NAME = "FairScheduler #";
+
+    private final Object mLock = new Object();
+    private final ArrayList<Tenant> mTenants = new ArrayList<Tenant>();
+    private final int mMaxThreads;
+    private int mThreads = 0;
+    private int mIdleThreads = 0;
+    private int mQueued = 0; // Tasks of all the tenants not taken yet
+    // Start tag of the last task taken, the virtual time of the scheduler
+    private double mVirtualTime = 0;
+
+    /**
+     * @param threads max number of worker threads. They are created when
+     *            needed and never finish.
+     */
+    public FairScheduler(int threads) {
+        if (threads <= 0)
+            throw new IllegalArgumentException("threads must be positive");
+
+        mMaxThreads = threads;
+    }
+
+    /**
+     * Adds a tenant
+     *
+     * @param name to identify the tenant in the stats
+     * @param weight share of the threads compared to the other tenants, 1 or
+     *            more
+     * @param requestsPerSecond rate of the quota. 0 to disable the quota
+     * @param burst tasks that can run without waiting for the quota, 1 or more
+     * @return the executor of the tenant
+     */
+    public Tenant addTenant(String name, int weight, double requestsPerSecond, int burst) {
+        Tenant tenant = new Tenant(name);
+        tenant.setWeight(weight);
+        tenant.setQuota(requestsPerSecond, burst);
+        synchronized (mLock) {
+            mTenants.add(tenant);
+        }
+        return tenant;
+    }
+
+    /**
+     * Removes a tenant. New tasks of the tenant are rejected. The tasks
+     * already queued are executed, and the tenant is removed after the last
+     * one is taken.
+     *
+     * @param tenant
+     */
+    public void removeTenant(Tenant tenant) {
+        synchronized (mLock) {
+            tenant.mRemoved = true;
+            if (tenant.mQueue.isEmpty())
+                mTenants.remove(tenant);
+        }
+    }
+
+    /**
+     * Stats of all the tenants
+     */
+    public ArrayList<TenantStats> getStats() {
+        ArrayList<TenantStats> stats = new ArrayList<TenantStats>();
+        synchronized (mLock) {
+            for (Tenant tenant : mTenants) {
+                stats.add(tenant.getStats());
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Wakes an idle worker and starts a new one if there are more tasks than
+     * idle workers. The idle workers already notified count as idle until
+     * they get the lock, so a burst of tasks starts new workers too. Must be
+     * called with the lock.
+     */
+    private void ensureWorker() {
+        if (mIdleThreads > 0)
+            mLock.notify();
+        if (mQueued <= mIdleThreads || mThreads >= mMaxThreads)
+            return;
+
+        mThreads++;
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                work();
+            }
+        }, THREAD_NAME + mThreads);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void work() {
+        while (true) {
+            Task task;
+            try {
+                task = take();
+            } catch (InterruptedException e) {
+                synchronized (mLock) {
+                    mThreads--;
+                }
+                return;
+            }
+            try {
+                task.mRunnable.run();
+            } catch (RuntimeException e) {
+                // The worker keeps running for the other tasks
+                Log.e(TAG, "Task of " + task.mTenant.mName + " failed", e);
+            }
+            synchronized (mLock) {
+                task.mTenant.mCompleted++;
+            }
+        }
+    }
+
+    /**
+     * Waits for the next task. Among the tenants with tasks and quota, the
+     * one with the lowest start tag is chosen (start-time fair queuing).
+     */
+    private Task take() throws InterruptedException {
+        synchronized (mLock) {
+            while (true) {
+                long now = System.nanoTime();
+                Tenant next = null;
+                double nextTag = 0;
+                long wait = Long.MAX_VALUE;
+                for (Tenant tenant : mTenants) {
+                    if (tenant.mQueue.isEmpty())
+                        continue;
+                    long tokenWait = tenant.waitForToken(now);
+                    if (tokenWait > 0) {
+                        wait = Math.min(wait, tokenWait);
+                        continue;
+                    }
+                    double tag = Math.max(mVirtualTime, tenant.mFinishTag);
+                    if (next == null || tag < nextTag) {
+                        next = tenant;
+                        nextTag = tag;
+                    }
+                }
+
+                if (next != null) {
+                    mVirtualTime = nextTag;
+                    next.mFinishTag = nextTag + 1.0 / next.mWeight;
+                    if (next.mRate > 0)
+                        next.mTokens -= 1;
+                    Task task = next.mQueue.removeFirst();
+                    mQueued--;
+                    if (next.mRemoved && next.mQueue.isEmpty())
+                        mTenants.remove(next);
+                    next.recordQueueTime(now - task.mQueuedTime);
+                    if (mQueued > 0)
+                        mLock.notify(); // Other idle worker can take the next
+                    return task;
+                }
+
+                mIdleThreads++;
+                try {
+                    if (wait == Long.MAX_VALUE)
+                        mLock.wait();
+                    else
+                        TimeUnit.NANOSECONDS.timedWait(mLock, wait);
+                } finally {
+                    mIdleThreads--;
+                }
+            }
+        }
+    }
+
+    /**
+     * Executor of a tenant. The quota and the weight can be changed at any
+     * time.
+     */
+    public class Tenant implements Executor {
+        private final String mName;
+        private final LinkedList<Task> mQueue = new LinkedList<Task>();
+        private final long mCreationTime = System.nanoTime();
+        private int mWeight = 1;
+        private double mFinishTag = 0;
+
+        // Token bucket, a rate of 0 is unlimited
+        private double mRate = 0;
+        private int mBurst = 1;
+        private double mTokens = 1;
+        private long mLastRefill = System.nanoTime();
+
+        private long mSubmitted = 0;
+        private long mCompleted = 0;
+        private long mDispatched = 0;
+        private long mQueueTime = 0; // ns, of all the tasks dispatched
+        private long mMaxQueueTime = 0;
+        private boolean mRemoved = false;
+
+        private Tenant(String name) {
+            mName = name;
+        }
+
+        @Override
+        public void execute(Runnable runnable) {
+            if (runnable == null)
+                throw new NullPointerException("Invalid task");
+
+            synchronized (mLock) {
+                if (mRemoved)
+                    throw new RejectedExecutionException("Tenant " + mName + " removed");
+                mQueue.add(new Task(this, runnable));
+                mQueued++;
+                mSubmitted++;
+                ensureWorker();
+            }
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        /**
+         * @param weight share of the threads compared to the other tenants, 1
+         *            or more
+         */
+        public void setWeight(int weight) {
+            if (weight <= 0)
+                throw new IllegalArgumentException("weight must be positive");
+
+            synchronized (mLock) {
+                mWeight = weight;
+            }
+        }
+
+        /**
+         * @param requestsPerSecond rate of the quota. 0 to disable the quota
+         * @param burst tasks that can run without waiting for the quota, 1 or
+         *            more
+         */
+        public void setQuota(double requestsPerSecond, int burst) {
+            if (requestsPerSecond < 0 || burst <= 0)
+                throw new IllegalArgumentException("Invalid quota " + requestsPerSecond + "/s, "
+                        + "burst " + burst);
+
+            synchronized (mLock) {
+                mRate = requestsPerSecond;
+                mBurst = burst;
+                mTokens = burst;
+                mLastRefill = System.nanoTime();
+                mLock.notifyAll(); // The workers waiting for tokens
+            }
+        }
+
+        public TenantStats getStats() {
+            synchronized (mLock) {
+                return new TenantStats(this);
+            }
+        }
+
+        /**
+         * Refills the bucket. Must be called with the lock.
+         *
+         * @return ns until there is a token, 0 if there is one already
+         */
+        private long waitForToken(long now) {
+            if (mRate <= 0)
+                return 0;
+
+            mTokens = Math.min(mBurst, mTokens + (now - mLastRefill) * mRate / 1e9);
+            mLastRefill = now;
+            if (mTokens >= 1)
+                return 0;
+            return Math.max(1, (long) Math.ceil((1 - mTokens) * 1e9 / mRate));
+        }
+
+        private void recordQueueTime(long nanos) {
+            mDispatched++;
+            mQueueTime += nanos;
+            mMaxQueueTime = Math.max(mMaxQueueTime, nanos);
+        }
+    }
+
+    /**
+     * Snapshot of the metrics of a tenant
+     */
+    public static class TenantStats {
+        public final String name;
+        public final long submitted;
+        public final long completed;
+        public final int queued;
+        /** Tasks completed per second since the tenant was added */
+        public final double throughput;
+        /** Time waited in the queue by the tasks started, in ms */
+        public final double meanQueueTime;
+        public final double maxQueueTime;
+
+        private TenantStats(Tenant tenant) {
+            long elapsed = System.nanoTime() - tenant.mCreationTime;
+            name = tenant.mName;
+            submitted = tenant.mSubmitted;
+            completed = tenant.mCompleted;
+            queued = tenant.mQueue.size();
+            throughput = elapsed > 0 ? completed * 1e9 / elapsed : 0;
+            meanQueueTime = tenant.mDispatched == 0 ? 0 : tenant.mQueueTime / 1e6
+                    / tenant.mDispatched;
+            maxQueueTime = tenant.mMaxQueueTime / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "TenantStats [name=%s, submitted=%d, completed=%d, "
+                    + "queued=%d, throughput=%.2f/s, meanQueueTime=%.1f ms, "
+                    + "maxQueueTime=%.1f ms]", name, submitted, completed, queued, throughput,
+                    meanQueueTime, maxQueueTime);
+        }
+    }
+
+    private static class Task {
+        private final Tenant mTenant;
+        private final Runnable mRunnable;
+        private final long mQueuedTime = System.nanoTime();
+
+        private Task(Tenant tenant, Runnable runnable) {
+            mTenant = tenant;
+            mRunnable = runnable;
+        }
+    }
+}
@@ -2,14 +2,18 @@
 package com.beefsoft.giphyapi.utils;
 
 import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.ConnectionReleaseTrigger;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
 import org.apache.http.params.BasicHttpParams;
@@ -23,13 +27,15 @@ import android.net.TrafficStats;
 import android.os.AsyncTask;
 import android.os.Build;
 
-import java.io.BufferedInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
+import java.net.InetAddress;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 
 /**
  * FetchInfoTask is a AsyncTask wrapper to fetch information using http.
@@ -87,6 +93,10 @@ public abstract class FetchInfoTask<Result> extends AsyncTask<String, Void, Resu
     protected static final int HTTP_READ_TIMEOUT = 8000;
     protected static final int HTTP_SOCKET_TIMEOUT = 8000;
     protected static final int BUFFER_SIZE = 2048;
+    // Rest of the response drained to reuse the connection after a stream
+    // parser stops, bigger rests close the connection
+    protected static final int DRAIN_LIMIT = 16 * 1024;
+    protected static final String CHARSET = "UTF-8";
 
     protected static final int TYPE_DEFAULT = 2;
     protected static final int TYPE_HTTP_GET = 0;
@@ -101,7 +111,13 @@ public abstract class FetchInfoTask<Result> extends AsyncTask<String, Void, Resu
     private Class<?> mJsonObjectClass = null; // .class to parse the result with
                                               // Jackson
     private FetchInfoParser<Result> mParser = null;
-    private static ObjectMapper mMapper;
+    private FetchInfoStreamParser<Result> mStreamParser = null;
+    // If the last response read left the connection ready to be reused
+    private boolean mConnectionReleased = false;
+    private static final ObjectMapper mMapper = new ObjectMapper();
+    // ObjectReaders are immutable and thread safe, one per result class
+    private static final ConcurrentHashMap<Class<?>, ObjectReader> mReaders =
+            new ConcurrentHashMap<Class<?>, ObjectReader>();
     private int mType = TYPE_DEFAULT;
     private String mUrl;
     private int mTrafficStatsTag = 0xAAAA;
@@ -183,6 +199,21 @@ public abstract class FetchInfoTask<Result> extends AsyncTask<String, Void, Resu
             executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, mUrl);
     }
 
+    /**
+     * Execute the Task in the executor indicated, like a tenant of a
+     * {@link FairScheduler}. Before Honeycomb the executor can't be chosen and
+     * the Task is executed like {@link #executeFetch()}.
+     * 
+     * @param executor
+     */
+    @SuppressLint("NewApi")
+    public void executeFetch(Executor executor) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB)
+            execute(mUrl);
+        else
+            executeOnExecutor(executor, mUrl);
+    }
+
     /**
      * Enables the json parsing of the response with the Jackson library
      * 
@@ -203,6 +234,85 @@ public abstract class FetchInfoTask<Result> extends AsyncTask<String, Void, Resu
         return this;
     }
 
+    /**
+     * Enables the parsing of the response while it is read. The parser can
+     * stop before the end of the response, the rest is drained if it is small
+     * or the connection is closed.
+     * 
+     * @param parser
+     */
+    protected FetchInfoTask<Result> enableStreamParsing(FetchInfoStreamParser<Result> parser) {
+        mStreamParser = parser;
+        return this;
+    }
+
+    /**
+     * Returns the shared reader of the class. The readers are created once and
+     * can be used from any thread.
+     * 
+     * @param jsonObjectClass .Class of the result object
+     */
+    public static ObjectReader getReader(Class<?> jsonObjectClass) {
+        ObjectReader reader = mReaders.get(jsonObjectClass);
+        if (reader == null) {
+            // A single value is read as a list of one, like the gif of the
+            // translate endpoint
+            reader = mMapper.reader(jsonObjectClass).with(
+                    DeserializationFeature.ACCEPT_SINGLE_VALUE_AS_ARRAY);
+            ObjectReader previous = mReaders.putIfAbsent(jsonObjectClass, reader);
+            if (previous != null)
+                reader = previous;
+        }
+        return reader;
+    }
+
+    /**
+     * Parses a sample json with the reader of the class, so Jackson builds and
+     * caches the deserializers before the first request. Call it from a
+     * background thread.
+     * 
+     * @param jsonObjectClass .Class of the result object
+     * @param sampleJson json with the nested objects of the class filled
+     */
+    public static void warmUpReader(Class<?> jsonObjectClass, String sampleJson) {
+        try {
+            getReader(jsonObjectClass).readValue(sampleJson);
+        } catch (IOException e) {
+            // The deserializers are cached anyway, the sample is discarded
+        }
+    }
+
+    /**
+     * Resolves the host and opens a connection with a HEAD request, so the
+     * first request finds the address cached and, with
+     * {@link #TYPE_HTTP_URLCONNECTION_GET}, a connection in the pool. Call it
+     * from a background thread.
+     * 
+     * @param url of the host
+     */
+    public static void warmUpConnection(String url) {
+        try {
+            URL target = new URL(url);
+            InetAddress.getByName(target.getHost());
+
+            HttpURLConnection urlConnection = (HttpURLConnection) target.openConnection();
+            urlConnection.setConnectTimeout(HTTP_CONNECTION_TIMEOUT);
+            urlConnection.setReadTimeout(HTTP_READ_TIMEOUT);
+            urlConnection.setUseCaches(false);
+            urlConnection.setRequestMethod("HEAD");
+            int status = urlConnection.getResponseCode();
+
+            // Closing the body releases the connection to the pool.
+            // disconnect() is not called because it could close the socket
+            InputStream in = status / 100 == 2 ? urlConnection.getInputStream()
+                    : urlConnection.getErrorStream();
+            if (in != null)
+                in.close();
+        } catch (IOException e) {
+            // The warm up is optional, the request will connect anyway
+        }
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     protected Result doInBackground(String... url) {
@@ -232,12 +342,14 @@ public abstract class FetchInfoTask<Result> extends AsyncTask<String, Void, Resu
                 return null;
             }
 
+            // Already parsed while reading
+            if (mStreamParser != null)
+                return (Result) infoFetched;
+
             // When no need to parse the info fetched, return the String
             if (mJsonObjectClass != null) {
                 // Other cases, parse the info with Jackson
-                if (mMapper == null)
-                    mMapper = new ObjectMapper();
-                Result r = (Result) mMapper.readValue((String) infoFetched, mJsonObjectClass);
+                Result r = (Result) getReader(mJsonObjectClass).readValue((String) infoFetched);
                 return r;
             }
 
@@ -300,10 +412,14 @@ public abstract class FetchInfoTask<Result> extends AsyncTask<String, Void, Resu
             if (status > 200)
                 return new FetchInfoError(status, response.getStatusLine().getReasonPhrase());
 
-            BufferedInputStream content = null;
             try {
-                content = (BufferedInputStream) response.getEntity().getContent();
-                return readStream(content);
+                HttpEntity entity = response.getEntity();
+                return readResponse(entity.getContent(), entity.getContentLength());
+            } catch (JsonParseException e) {
+                return new FetchInfoError(ERROR_JSON_PARSE, "JsonParseException " + e.getMessage());
+            } catch (JsonMappingException e) {
+                return new FetchInfoError(ERROR_JSON_MAPPING,
+                        "JsonMappingException, some of the values is not well mapped");
             } catch (IOException e) {
                 return new FetchInfoError(ERROR_IO_EXCEPTION, "IOException: " + e.getMessage());
             }
@@ -311,21 +427,101 @@ public abstract class FetchInfoTask<Result> extends AsyncTask<String, Void, Resu
     };
 
     /**
-     * Reads a InputStream. This method close the inputStream
+     * Reads the response with the stream parser, if enabled, or into a String.
+     * {@link #mConnectionReleased} is set to true if the stream was consumed
+     * and closed, so the connection can be reused.
      * 
      * @param in
+     * @param contentLength of the response, -1 if unknown
+     * @return the result parsed or the String read
+     * @throws IOException
+     */
+    private Object readResponse(InputStream in, long contentLength) throws IOException {
+        mConnectionReleased = false;
+        if (mStreamParser == null) {
+            String info = readStream(in, contentLength);
+            mConnectionReleased = true;
+            return info;
+        }
+
+        CountingInputStream counting = new CountingInputStream(in);
+        Result result = mStreamParser.onParse(counting);
+        long remaining = contentLength < 0 ? -1 : contentLength - counting.mCount;
+        mConnectionReleased = releaseStream(in, remaining);
+        return result;
+    }
+
+    /**
+     * Releases a response not read completely. If the rest is small it is
+     * drained and the stream closed, so the connection goes back to the pool.
+     * Otherwise the connection is aborted.
+     * 
+     * @param in
+     * @param remaining bytes not read, -1 if unknown
+     * @return true if the stream was drained and closed, false if the
+     *         connection must be closed
+     * @throws IOException
+     */
+    private static boolean releaseStream(InputStream in, long remaining) throws IOException {
+        if (remaining <= DRAIN_LIMIT) {
+            byte[] buffer = BufferPool.acquire(BUFFER_SIZE);
+            try {
+                int drained = 0;
+                int lenght;
+                while (drained <= DRAIN_LIMIT && (lenght = in.read(buffer)) != -1) {
+                    drained += lenght;
+                }
+                if (drained <= DRAIN_LIMIT) {
+                    in.close();
+                    return true;
+                }
+            } finally {
+                BufferPool.release(buffer);
+            }
+        }
+
+        // HttpClient would drain the stream on close. The HttpURLConnection
+        // socket is closed by the caller with disconnect()
+        if (in instanceof ConnectionReleaseTrigger)
+            ((ConnectionReleaseTrigger) in).abortConnection();
+        return false;
+    }
+
+    /**
+     * Reads a InputStream. This method close the inputStream. The content is
+     * read into a buffer of the {@link BufferPool} sized with the
+     * Content-Length, and decoded as UTF-8 directly from it. Package-private
+     * for the benchmarks.
+     * 
+     * @param in
+     * @param contentLength of the response, -1 if unknown
      * @return
      * @throws IOException
      */
-    private Object readStream(InputStream in) throws IOException {
-        ByteArrayOutputStream bout = new ByteArrayOutputStream(BUFFER_SIZE);
-        byte[] buffer = new byte[BUFFER_SIZE];
-        int lenght;
-        while ((lenght = in.read(buffer)) > 0) {
-            bout.write(buffer, 0, lenght);
+    static String readStream(InputStream in, long contentLength) throws IOException {
+        byte[] buffer = BufferPool.acquire(contentLength);
+        try {
+            int count = 0;
+            int lenght;
+            while (true) {
+                if (count == buffer.length) {
+                    // Don't grow the buffer if the Content-Length was exact
+                    int next = in.read();
+                    if (next == -1)
+                        break;
+                    buffer = BufferPool.grow(buffer, count);
+                    buffer[count++] = (byte) next;
+                }
+                lenght = in.read(buffer, count, buffer.length - count);
+                if (lenght == -1)
+                    break;
+                count += lenght;
+            }
+            return new String(buffer, 0, count, CHARSET);
+        } finally {
+            BufferPool.release(buffer);
+            in.close();
         }
-        in.close();
-        return bout.toString();
     }
 
     /**
@@ -352,21 +548,31 @@ public abstract class FetchInfoTask<Result> extends AsyncTask<String, Void, Resu
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
             TrafficStats.setThreadStatsTag(mTrafficStatsTag);
         }
+        mConnectionReleased = false;
         try {
-            BufferedInputStream in = new BufferedInputStream(urlConnection.getInputStream());
-
+            // The status is checked first, getInputStream() throws an
+            // IOException for the error status and the code would be lost
             int status = urlConnection.getResponseCode();
             if (status / 100 != 2)
                 return new FetchInfoError(status, urlConnection.getResponseMessage());
 
-            return readStream(in);
+            InputStream in = urlConnection.getInputStream();
+            return readResponse(in, urlConnection.getContentLength());
+        } catch (JsonParseException e) {
+            return new FetchInfoError(ERROR_JSON_PARSE, "JsonParseException " + e.getMessage());
+        } catch (JsonMappingException e) {
+            return new FetchInfoError(ERROR_JSON_MAPPING,
+                    "JsonMappingException, some of the values is not well mapped");
         } catch (IOException e) {
             return new FetchInfoError(ERROR_IO_EXCEPTION, "IOException: " + e.getMessage());
         } finally {
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
                 TrafficStats.clearThreadStatsTag();
             }
-            urlConnection.disconnect();
+            // disconnect() closes the socket, only needed when the response
+            // was not consumed. Otherwise the connection goes back to the pool
+            if (!mConnectionReleased)
+                urlConnection.disconnect();
         }
     }
 
@@ -432,6 +638,48 @@ public abstract class FetchInfoTask<Result> extends AsyncTask<String, Void, Resu
         Result onParse(String info);
     }
 
+    protected interface FetchInfoStreamParser<Result> {
+        /**
+         * Parses the response while it is read. The stream must not be
+         * closed, it can be left before the end.
+         */
+        Result onParse(InputStream in) throws IOException;
+    }
+
+    /**
+     * Counts the bytes read from the stream
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        private long mCount = 0;
+
+        private CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1)
+                mCount++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int read = super.read(buffer, offset, count);
+            if (read > 0)
+                mCount += read;
+            return read;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            long skipped = super.skip(count);
+            mCount += skipped;
+            return skipped;
+        }
+    }
+
     /**
      * A nested class to get an singleton/instance of DefaultHTTPClient. Is
      * ThreadSafe Tested and fail!! Need more test
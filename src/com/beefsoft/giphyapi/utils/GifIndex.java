@@ -0,0 +1,676 @@
+package com.beefsoft.giphyapi.utils;
+
+import com.beefsoft.giphyapi.data.GiphyInfo;
+import com.beefsoft.giphyapi.data.GiphyInfo.GifInfo;
+import com.beefsoft.giphyapi.data.GiphySnapshot;
+
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Local inverted index of the fetched gifs. Maps the tokens of the slugs and
+ * the searched terms to the {@link GifInfo#id} of the gifs, so a search can be
+ * answered without connection.
+ * <p>
+ * The gifs are added to a memory segment. When the segment has
+ * {@link #FLUSH_POSTINGS} postings it is written to disk as an immutable
+ * segment: the ids of the gifs, the sorted terms and, for every term, the
+ * sorted list of gifs encoded with variable length deltas. The postings are
+ * read from the memory mapped segment when they are needed. The gifs of every
+ * segment are stored next to it in a {@link GiphySnapshot}, so the results
+ * can be returned after a restart without connection. When there are
+ * more than {@link #MAX_SEGMENTS} segments they are merged into one, keeping
+ * only the newest {@link #MAX_DOCS} gifs, so the index never grows without
+ * limit.
+ * <p>
+ * The results are sorted from the newest to the oldest gif. The class is
+ * thread safe, the gifs should be added from a background thread because the
+ * segments are written when needed.
+ *
+ * @author Marcos Trujillo
+ */
+public class GifIndex {
+    private static final String TAG = "GifIndex";
+
+    public static final int FLUSH_POSTINGS = 2048;
+    public static final int MAX_SEGMENTS = 4;
+    public static final int MAX_DOCS = 5000;
+
+    private static final String SEGMENT_PREFIX = "segment_";
+    private static final String SEGMENT_SUFFIX = ".idx";
+    private static final String GIFS_SUFFIX = ".gifs";
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final int MAGIC = 0x47494458; // "GIDX"
+    private static final int VERSION = 1;
+    private static final String CHARSET = "UTF-8";
+
+    private final File mDirectory;
+    private final ArrayList<Segment> mSegments = new ArrayList<Segment>();
+    private MemorySegment mMemory = new MemorySegment();
+    private int mNextGeneration = 0;
+
+    /**
+     * Opens the index stored in the directory, or creates a new one. Corrupted
+     * segments are deleted.
+     *
+     * @param directory where the segments are stored
+     */
+    public GifIndex(File directory) {
+        mDirectory = directory;
+        if (!directory.isDirectory() && !directory.mkdirs())
+            Log.w(TAG, "Impossible to create the index directory " + directory);
+
+        File[] files = directory.listFiles();
+        if (files == null)
+            return;
+
+        for (File file : files) {
+            // Segments not completely written before a crash
+            if (file.getName().endsWith(TMP_SUFFIX)) {
+                file.delete();
+                continue;
+            }
+            int generation = parseGeneration(file.getName());
+            if (generation < 0)
+                continue;
+            mNextGeneration = Math.max(mNextGeneration, generation + 1);
+            try {
+                mSegments.add(Segment.open(file, gifsFile(generation), generation));
+            } catch (IOException e) {
+                Log.w(TAG, "Deleting corrupted segment " + file + ": " + e.getMessage());
+                deleteSegment(generation);
+            }
+        }
+        // Gifs of segments already deleted
+        for (File file : files) {
+            String name = file.getName();
+            if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(GIFS_SUFFIX)
+                    && !new File(mDirectory, name.substring(0, name.length()
+                            - GIFS_SUFFIX.length()) + SEGMENT_SUFFIX).exists())
+                file.delete();
+        }
+        Collections.sort(mSegments, Segment.BY_GENERATION);
+    }
+
+    /**
+     * Tokenizes a text: lower case words of letters and digits
+     *
+     * @param text
+     * @return the tokens, never null
+     */
+    public static List<String> tokenize(String text) {
+        ArrayList<String> tokens = new ArrayList<String>();
+        if (text == null)
+            return tokens;
+
+        for (String token : text.toLowerCase(Locale.US).split("[^\\p{L}\\p{Nd}]+")) {
+            if (token.length() > 1)
+                tokens.add(token);
+        }
+        return tokens;
+    }
+
+    /**
+     * Adds the gifs to the index
+     *
+     * @param gifs fetched from the server
+     * @param term (optional) searched to get the gifs. null if none
+     */
+    public void add(List<GifInfo> gifs, String term) {
+        if (gifs == null || gifs.isEmpty())
+            return;
+
+        List<String> termTokens = tokenize(term);
+        synchronized (this) {
+            for (GifInfo gif : gifs) {
+                if (gif == null || gif.id == null)
+                    continue;
+                mMemory.add(gif, termTokens);
+                mMemory.add(gif, tokenize(slugWithoutId(gif)));
+            }
+
+            if (mMemory.mPostings >= FLUSH_POSTINGS)
+                flush();
+        }
+    }
+
+    /**
+     * Search the gifs that contains all the tokens of the query
+     *
+     * @param query
+     * @param limit max number of results, -1 for all
+     * @return the ids of the gifs, from the newest to the oldest
+     */
+    public synchronized ArrayList<String> search(String query, int limit) {
+        ArrayList<String> result = new ArrayList<String>();
+        for (Map.Entry<String, Long> match : match(query)) {
+            if (limit != -1 && result.size() >= limit)
+                break;
+            result.add(match.getKey());
+        }
+        return result;
+    }
+
+    /**
+     * Search the gifs that contains all the tokens of the query
+     *
+     * @param query
+     * @param limit max number of results, -1 for all
+     * @return the gifs, from the newest to the oldest
+     */
+    public synchronized ArrayList<GifInfo> searchGifs(String query, int limit) {
+        ArrayList<GifInfo> result = new ArrayList<GifInfo>();
+        for (Map.Entry<String, Long> match : match(query)) {
+            if (limit != -1 && result.size() >= limit)
+                break;
+            GifInfo gif = getGif(match.getValue());
+            if (gif != null)
+                result.add(gif);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the gifs that contains all the tokens of the query with their
+     * ranks, from the newest to the oldest
+     */
+    private ArrayList<Map.Entry<String, Long>> match(String query) {
+        ArrayList<Map.Entry<String, Long>> sorted = new ArrayList<Map.Entry<String, Long>>();
+        List<String> tokens = tokenize(query);
+        if (tokens.isEmpty())
+            return sorted;
+
+        // Rank of every gif that contains all the tokens already processed
+        HashMap<String, Long> matches = null;
+        for (String token : tokens) {
+            HashMap<String, Long> tokenMatches = new HashMap<String, Long>();
+            for (Segment segment : new ArrayList<Segment>(mSegments)) {
+                try {
+                    segment.collect(token, tokenMatches);
+                } catch (IOException e) {
+                    dropSegment(segment, e);
+                }
+            }
+            mMemory.collect(token, tokenMatches);
+
+            if (matches != null)
+                tokenMatches.keySet().retainAll(matches.keySet());
+            matches = tokenMatches;
+            if (matches.isEmpty())
+                return sorted;
+        }
+
+        sorted.addAll(matches.entrySet());
+        Collections.sort(sorted, new Comparator<Map.Entry<String, Long>>() {
+            @Override
+            public int compare(Map.Entry<String, Long> lhs, Map.Entry<String, Long> rhs) {
+                return rhs.getValue().compareTo(lhs.getValue());
+            }
+        });
+        return sorted;
+    }
+
+    /**
+     * Returns the gif with the rank indicated
+     *
+     * @return the gif, null if the segment doesn't exist anymore
+     */
+    private GifInfo getGif(long rank) {
+        int generation = (int) (rank >>> 32);
+        int doc = (int) rank;
+        if (generation == Integer.MAX_VALUE)
+            return mMemory.mGifs.get(doc);
+
+        for (Segment segment : mSegments) {
+            if (segment.mGeneration != generation)
+                continue;
+            try {
+                return segment.getGif(doc);
+            } catch (IOException e) {
+                dropSegment(segment, e);
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Removes a segment found corrupted while reading it
+     */
+    private void dropSegment(Segment segment, IOException e) {
+        Log.w(TAG, "Deleting corrupted segment " + segment.mGeneration + ": " + e.getMessage());
+        mSegments.remove(segment);
+        deleteSegment(segment.mGeneration);
+    }
+
+    /**
+     * Writes the memory segment to disk, merging the segments if there are
+     * too many.
+     */
+    public synchronized void flush() {
+        if (mMemory.mDocs.isEmpty())
+            return;
+
+        int generation = mNextGeneration++;
+        try {
+            mSegments.add(writeSegment(mMemory, generation));
+            mMemory = new MemorySegment();
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing the segment " + generation + ": " + e.getMessage());
+            return;
+        }
+
+        if (mSegments.size() > MAX_SEGMENTS)
+            merge();
+    }
+
+    /**
+     * Merges all the segments into one, keeping only the newest
+     * {@link #MAX_DOCS} gifs.
+     */
+    private void merge() {
+        // The newest occurrence of every gif decides its position
+        HashMap<String, Long> ranks = new HashMap<String, Long>();
+        for (Segment segment : mSegments) {
+            for (int doc = 0; doc < segment.mDocs.length; doc++) {
+                ranks.put(segment.mDocs[doc], rank(segment.mGeneration, doc));
+            }
+        }
+        ArrayList<Map.Entry<String, Long>> sorted =
+                new ArrayList<Map.Entry<String, Long>>(ranks.entrySet());
+        Collections.sort(sorted, new Comparator<Map.Entry<String, Long>>() {
+            @Override
+            public int compare(Map.Entry<String, Long> lhs, Map.Entry<String, Long> rhs) {
+                return lhs.getValue().compareTo(rhs.getValue());
+            }
+        });
+
+        MemorySegment merged = new MemorySegment();
+        int first = Math.max(0, sorted.size() - MAX_DOCS);
+        for (int i = first; i < sorted.size(); i++) {
+            GifInfo gif = getGif(sorted.get(i).getValue());
+            if (gif != null)
+                merged.addDoc(gif);
+        }
+        for (Segment segment : new ArrayList<Segment>(mSegments)) {
+            try {
+                segment.copyTo(merged);
+            } catch (IOException e) {
+                // Merged again in the next flush, without the segment
+                dropSegment(segment, e);
+                return;
+            }
+        }
+
+        int generation = mNextGeneration++;
+        try {
+            Segment segment = writeSegment(merged, generation);
+            for (Segment old : mSegments) {
+                deleteSegment(old.mGeneration);
+            }
+            mSegments.clear();
+            mSegments.add(segment);
+        } catch (IOException e) {
+            Log.e(TAG, "Error merging the segments: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the segment into temporary files and renames them when they are
+     * complete, so a crash never leaves a partial segment. The gifs are
+     * renamed first, a segment file is never without its gifs.
+     */
+    private Segment writeSegment(MemorySegment memory, int generation) throws IOException {
+        File file = segmentFile(generation);
+        File gifsFile = gifsFile(generation);
+        File tmpFile = new File(file.getPath() + TMP_SUFFIX);
+        File tmpGifsFile = new File(gifsFile.getPath() + TMP_SUFFIX);
+        try {
+            memory.write(tmpFile, tmpGifsFile);
+            if (!tmpGifsFile.renameTo(gifsFile) || !tmpFile.renameTo(file))
+                throw new IOException("Impossible to rename the segment " + generation);
+            return Segment.open(file, gifsFile, generation);
+        } catch (IOException e) {
+            tmpFile.delete();
+            tmpGifsFile.delete();
+            deleteSegment(generation);
+            throw e;
+        }
+    }
+
+    private void deleteSegment(int generation) {
+        segmentFile(generation).delete();
+        gifsFile(generation).delete();
+    }
+
+    private File segmentFile(int generation) {
+        return new File(mDirectory, SEGMENT_PREFIX + generation + SEGMENT_SUFFIX);
+    }
+
+    private File gifsFile(int generation) {
+        return new File(mDirectory, SEGMENT_PREFIX + generation + GIFS_SUFFIX);
+    }
+
+    private static int parseGeneration(String name) {
+        if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX))
+            return -1;
+        try {
+            return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length()
+                    - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * The slugs ends with the id of the gif, that is not a useful token
+     */
+    private static String slugWithoutId(GifInfo gif) {
+        if (gif.slug == null)
+            return null;
+        if (gif.slug.endsWith("-" + gif.id))
+            return gif.slug.substring(0, gif.slug.length() - gif.id.length() - 1);
+        return gif.slug;
+    }
+
+    /**
+     * Position of a gif in the index. Bigger is newer.
+     */
+    private static long rank(int generation, int doc) {
+        return ((long) generation << 32) | doc;
+    }
+
+    /**
+     * Segment where the gifs are added before writing them to disk
+     */
+    private static class MemorySegment {
+        private final ArrayList<String> mDocs = new ArrayList<String>();
+        private final ArrayList<GifInfo> mGifs = new ArrayList<GifInfo>();
+        private final HashMap<String, Integer> mDocNumbers = new HashMap<String, Integer>();
+        private final TreeMap<String, TreeSet<Integer>> mTerms =
+                new TreeMap<String, TreeSet<Integer>>();
+        private int mPostings = 0;
+
+        /**
+         * Adds the gif or replaces the previous version of it
+         */
+        private int addDoc(GifInfo gif) {
+            Integer doc = mDocNumbers.get(gif.id);
+            if (doc == null) {
+                doc = mDocs.size();
+                mDocs.add(gif.id);
+                mGifs.add(gif);
+                mDocNumbers.put(gif.id, doc);
+            } else {
+                mGifs.set(doc, gif);
+            }
+            return doc;
+        }
+
+        private void add(GifInfo gif, List<String> tokens) {
+            if (tokens.isEmpty())
+                return;
+
+            int doc = addDoc(gif);
+            for (String token : tokens) {
+                addPosting(token, doc);
+            }
+        }
+
+        private void addPosting(String token, int doc) {
+            TreeSet<Integer> postings = mTerms.get(token);
+            if (postings == null) {
+                postings = new TreeSet<Integer>();
+                mTerms.put(token, postings);
+            }
+            if (postings.add(doc))
+                mPostings++;
+        }
+
+        private void collect(String token, HashMap<String, Long> matches) {
+            TreeSet<Integer> postings = mTerms.get(token);
+            if (postings == null)
+                return;
+            for (Integer doc : postings) {
+                matches.put(mDocs.get(doc), rank(Integer.MAX_VALUE, doc));
+            }
+        }
+
+        /**
+         * Writes the segment. Format (big endian): magic, version, number of
+         * gifs, number of terms, ids of the gifs, terms with the number of
+         * postings and their offset, postings. The gifs are written in the
+         * same order in a {@link GiphySnapshot}.
+         */
+        private void write(File file, File gifsFile) throws IOException {
+            GiphyInfo gifs = new GiphyInfo();
+            gifs.gifList = mGifs;
+            GiphySnapshot.write(gifs, gifsFile);
+
+            ByteArrayOutputStream postingBytes = new ByteArrayOutputStream(mPostings * 2);
+            int[] offsets = new int[mTerms.size()];
+            int[] counts = new int[mTerms.size()];
+            int term = 0;
+            for (TreeSet<Integer> postings : mTerms.values()) {
+                offsets[term] = postingBytes.size();
+                counts[term] = postings.size();
+                int last = 0;
+                for (Integer doc : postings) {
+                    writeVarInt(postingBytes, doc - last);
+                    last = doc;
+                }
+                term++;
+            }
+
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(file)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(mDocs.size());
+                out.writeInt(mTerms.size());
+                for (String id : mDocs) {
+                    writeString(out, id);
+                }
+                term = 0;
+                for (String token : mTerms.keySet()) {
+                    writeString(out, token);
+                    out.writeInt(counts[term]);
+                    out.writeInt(offsets[term]);
+                    term++;
+                }
+                postingBytes.writeTo(out);
+            } finally {
+                out.close();
+            }
+        }
+
+        private static void writeString(DataOutputStream out, String value) throws IOException {
+            byte[] bytes = value.getBytes(CHARSET);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        private static void writeVarInt(ByteArrayOutputStream out, int value) {
+            while ((value & ~0x7F) != 0) {
+                out.write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.write(value);
+        }
+    }
+
+    /**
+     * Immutable segment stored in disk. The ids and the terms are loaded, the
+     * postings are read from the mapped file.
+     */
+    private static class Segment {
+        private static final Comparator<Segment> BY_GENERATION = new Comparator<Segment>() {
+            @Override
+            public int compare(Segment lhs, Segment rhs) {
+                return lhs.mGeneration < rhs.mGeneration ? -1
+                        : (lhs.mGeneration == rhs.mGeneration ? 0 : 1);
+            }
+        };
+
+        private final int mGeneration;
+        private final String[] mDocs;
+        private final String[] mTerms;
+        private final int[] mCounts;
+        private final int[] mOffsets;
+        private final ByteBuffer mPostings;
+        private final GiphySnapshot mGifs;
+
+        private Segment(int generation, String[] docs, String[] terms, int[] counts,
+                int[] offsets, ByteBuffer postings, GiphySnapshot gifs) {
+            mGeneration = generation;
+            mDocs = docs;
+            mTerms = terms;
+            mCounts = counts;
+            mOffsets = offsets;
+            mPostings = postings;
+            mGifs = gifs;
+        }
+
+        private static Segment open(File file, File gifsFile, int generation)
+                throws IOException {
+            GiphySnapshot gifs = GiphySnapshot.open(gifsFile);
+
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            ByteBuffer buffer;
+            try {
+                FileChannel channel = raf.getChannel();
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } finally {
+                raf.close();
+            }
+
+            try {
+                if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+                    throw new IOException("Unknown segment format");
+
+                String[] docs = new String[buffer.getInt()];
+                String[] terms = new String[buffer.getInt()];
+                int[] counts = new int[terms.length];
+                int[] offsets = new int[terms.length];
+                for (int i = 0; i < docs.length; i++) {
+                    docs[i] = readString(buffer);
+                }
+                for (int i = 0; i < terms.length; i++) {
+                    terms[i] = readString(buffer);
+                    counts[i] = buffer.getInt();
+                    offsets[i] = buffer.getInt();
+                }
+                if (gifs.size() != docs.length)
+                    throw new IOException("The gifs don't match the segment");
+                ByteBuffer postings = buffer.slice();
+                for (int i = 0; i < terms.length; i++) {
+                    if (counts[i] <= 0 || counts[i] > docs.length || offsets[i] < 0
+                            || offsets[i] >= postings.limit())
+                        throw new IOException("Invalid postings of " + terms[i]);
+                }
+
+                Segment segment = new Segment(generation, docs, terms, counts, offsets,
+                        postings, gifs);
+                // Decodes all the postings once, so the searches never read
+                // out of the segment
+                for (int i = 0; i < terms.length; i++) {
+                    segment.postings(i);
+                }
+                return segment;
+            } catch (RuntimeException e) {
+                // Truncated file or negative sizes
+                throw new IOException("Corrupted segment: " + e);
+            }
+        }
+
+        private static String readString(ByteBuffer buffer) throws IOException {
+            byte[] bytes = new byte[buffer.getInt()];
+            buffer.get(bytes);
+            return new String(bytes, CHARSET);
+        }
+
+        private GifInfo getGif(int doc) throws IOException {
+            try {
+                return mGifs.getGif(doc);
+            } catch (RuntimeException e) {
+                throw new IOException("Corrupted gifs: " + e);
+            }
+        }
+
+        /**
+         * Decodes the postings of the term
+         *
+         * @throws IOException if the postings are corrupted
+         */
+        private int[] postings(int term) throws IOException {
+            int[] docs = new int[mCounts[term]];
+            int position = mOffsets[term];
+            int limit = mPostings.limit();
+            int doc = 0;
+            for (int i = 0; i < docs.length; i++) {
+                int delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    if (position >= limit || shift > 28)
+                        throw new IOException("Invalid postings of " + mTerms[term]);
+                    b = mPostings.get(position++);
+                    delta |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while ((b & 0x80) != 0);
+                if (delta < 0 || (i > 0 && delta == 0))
+                    throw new IOException("Invalid postings of " + mTerms[term]);
+                doc += delta;
+                if (doc >= mDocs.length)
+                    throw new IOException("Invalid postings of " + mTerms[term]);
+                docs[i] = doc;
+            }
+            return docs;
+        }
+
+        private void collect(String token, HashMap<String, Long> matches) throws IOException {
+            int term = Arrays.binarySearch(mTerms, token);
+            if (term < 0)
+                return;
+            for (int doc : postings(term)) {
+                long rank = rank(mGeneration, doc);
+                Long previous = matches.get(mDocs[doc]);
+                if (previous == null || previous < rank)
+                    matches.put(mDocs[doc], rank);
+            }
+        }
+
+        /**
+         * Copies the postings of the gifs that exist in the merged segment
+         */
+        private void copyTo(MemorySegment merged) throws IOException {
+            for (int term = 0; term < mTerms.length; term++) {
+                for (int doc : postings(term)) {
+                    Integer mergedDoc = merged.mDocNumbers.get(mDocs[doc]);
+                    if (mergedDoc != null)
+                        merged.addPosting(mTerms[term], mergedDoc);
+                }
+            }
+        }
+    }
+}
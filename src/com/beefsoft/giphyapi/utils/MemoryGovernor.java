@@ -0,0 +1,275 @@
+package com.beefsoft.giphyapi.utils;
+
+import android.content.ComponentCallbacks2;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Memory budget shared by all the caches of the library. The budget is split
+ * between the {@link Tier}s and every cache registered gets an equal part of
+ * the budget of its tier.
+ * <p>
+ * Under memory pressure the tiers are trimmed in order: first the decoded
+ * frames, then the encoded gifs and at last the parsed info. Forward the
+ * trim callbacks of the app:
+ *
+ * <pre class="prettyprint">
+ * public void onTrimMemory(int level) {
+ *     super.onTrimMemory(level);
+ *     MemoryGovernor.onTrimMemory(level);
+ * }
+ * </pre>
+ *
+ * @author Marcos Trujillo
+ */
+public final class MemoryGovernor {
+    private static final String TAG = "MemoryGovernor";
+
+    /** Part of the heap used by default by all the caches */
+    public static final int DEFAULT_BUDGET_DIVISOR = 8;
+
+    private static final LinkedHashMap<String, Registration> mCaches =
+            new LinkedHashMap<String, Registration>();
+    private static long mBudget = Runtime.getRuntime().maxMemory() / DEFAULT_BUDGET_DIVISOR;
+
+    /**
+     * Kind of the cached data, in the order it is dropped under memory
+     * pressure
+     */
+    public static enum Tier {
+        /** Decoded frames of the gifs, cheap to decode again */
+        DECODED_FRAMES(50),
+        /** Encoded bytes of the gifs, need a download to get them again */
+        ENCODED_GIFS(30),
+        /** Parsed responses and gifs, small but used by the local searches */
+        PARSED_INFO(20);
+
+        private final int mShare; // % of the budget
+
+        private Tier(int share) {
+            mShare = share;
+        }
+
+        public int getShare() {
+            return mShare;
+        }
+    }
+
+    /**
+     * Cache that can be registered in the governor
+     */
+    public static interface TrimmableCache {
+        /**
+         * Approximate bytes used by the cache
+         */
+        long getSize();
+
+        /**
+         * Sets the max bytes that the cache can use, removing the entries that
+         * don't fit
+         */
+        void setMaxSize(long maxSize);
+
+        /**
+         * Removes entries until the cache uses less than the bytes indicated.
+         * The max size is not changed.
+         *
+         * @param maxSize 0 to remove all the entries
+         */
+        void trimToSize(long maxSize);
+    }
+
+    private MemoryGovernor() {
+    }
+
+    /**
+     * Registers a cache. Its max size is set to its part of the budget of the
+     * tier and the max sizes of the other caches of the tier are updated.
+     *
+     * @param name unique name of the cache, shown in {@link #getUsage()}
+     * @param tier of the data cached
+     * @param cache
+     */
+    public static void register(String name, Tier tier, TrimmableCache cache) {
+        if (name == null || tier == null || cache == null)
+            throw new NullPointerException("Invalid cache registration");
+
+        synchronized (mCaches) {
+            Registration previous = mCaches.put(name, new Registration(tier, cache));
+            if (previous != null && previous.mTier != tier)
+                updateMaxSizes(previous.mTier);
+            updateMaxSizes(tier);
+        }
+    }
+
+    /**
+     * Unregisters a cache. Its max size is not changed.
+     *
+     * @param name used in the registration
+     */
+    public static void unregister(String name) {
+        synchronized (mCaches) {
+            Registration registration = mCaches.remove(name);
+            if (registration != null)
+                updateMaxSizes(registration.mTier);
+        }
+    }
+
+    /**
+     * Sets the bytes that all the caches can use together. By default 1/
+     * {@value #DEFAULT_BUDGET_DIVISOR} of the max heap.
+     *
+     * @param bytes
+     */
+    public static void setBudget(long bytes) {
+        if (bytes < 0)
+            throw new IllegalArgumentException("Invalid budget " + bytes);
+
+        synchronized (mCaches) {
+            mBudget = bytes;
+            for (Tier tier : Tier.values()) {
+                updateMaxSizes(tier);
+            }
+        }
+    }
+
+    public static long getBudget() {
+        synchronized (mCaches) {
+            return mBudget;
+        }
+    }
+
+    /**
+     * Bytes that the caches of the tier can use together
+     *
+     * @param tier
+     */
+    public static long getBudget(Tier tier) {
+        synchronized (mCaches) {
+            return mBudget * tier.mShare / 100;
+        }
+    }
+
+    /**
+     * Approximate bytes used by every cache registered
+     *
+     * @return bytes by name of the cache
+     */
+    public static Map<String, Long> getUsage() {
+        LinkedHashMap<String, Long> usage = new LinkedHashMap<String, Long>();
+        for (Map.Entry<String, Registration> entry : registrations().entrySet()) {
+            usage.put(entry.getKey(), entry.getValue().mCache.getSize());
+        }
+        return usage;
+    }
+
+    /**
+     * Approximate bytes used by the caches of the tier
+     *
+     * @param tier
+     */
+    public static long getUsage(Tier tier) {
+        long usage = 0;
+        for (Registration registration : registrations().values()) {
+            if (registration.mTier == tier)
+                usage += registration.mCache.getSize();
+        }
+        return usage;
+    }
+
+    /**
+     * Trims the caches according to the memory pressure. The less important
+     * tiers are dropped before shrinking the next one.
+     *
+     * @param level of ComponentCallbacks2.onTrimMemory(int)
+     */
+    public static void onTrimMemory(int level) {
+        float[] kept = keptRatios(level);
+        Map<String, Registration> caches = registrations();
+        Log.d(TAG, "Trimming caches for level " + level + ". Usage before: " + getUsage());
+        for (Tier tier : Tier.values()) {
+            float ratio = kept[tier.ordinal()];
+            if (ratio >= 1)
+                continue;
+            for (Registration registration : caches.values()) {
+                if (registration.mTier == tier)
+                    registration.mCache.trimToSize((long) (registration.mCache.getSize() * ratio));
+            }
+        }
+    }
+
+    /**
+     * Drops all the caches, like ComponentCallbacks.onLowMemory()
+     */
+    public static void onLowMemory() {
+        onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+    }
+
+    /**
+     * Part of every tier kept for the trim level, in the order of the tiers.
+     * Every level keeps at most what the lower levels keep. The parsed info is
+     * small and used by the local searches, it is only cut when the process
+     * is in the background list and can be killed.
+     */
+    private static float[] keptRatios(int level) {
+        // The process is going to be killed, keep nothing
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_COMPLETE)
+            return new float[] { 0, 0, 0 };
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE)
+            return new float[] { 0, 0, 0.5f };
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND)
+            return new float[] { 0, 0, 1 };
+        // Nothing is shown, and at least as aggressive as RUNNING_CRITICAL
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN)
+            return new float[] { 0, 0, 1 };
+        // Running in foreground
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL)
+            return new float[] { 0, 0, 1 };
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW)
+            return new float[] { 0, 0.5f, 1 };
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE)
+            return new float[] { 0.5f, 1, 1 };
+        return new float[] { 1, 1, 1 };
+    }
+
+    /**
+     * Gives to every cache of the tier an equal part of its budget. Must be
+     * called with the lock of mCaches.
+     */
+    private static void updateMaxSizes(Tier tier) {
+        ArrayList<TrimmableCache> caches = new ArrayList<TrimmableCache>();
+        for (Registration registration : mCaches.values()) {
+            if (registration.mTier == tier)
+                caches.add(registration.mCache);
+        }
+        if (caches.isEmpty())
+            return;
+
+        long maxSize = mBudget * tier.mShare / 100 / caches.size();
+        for (TrimmableCache cache : caches) {
+            cache.setMaxSize(maxSize);
+        }
+    }
+
+    /**
+     * Copy of the registrations, to call the caches without the lock
+     */
+    private static Map<String, Registration> registrations() {
+        synchronized (mCaches) {
+            return new LinkedHashMap<String, Registration>(mCaches);
+        }
+    }
+
+    private static class Registration {
+        private final Tier mTier;
+        private final TrimmableCache mCache;
+
+        private Registration(Tier tier, TrimmableCache cache) {
+            mTier = tier;
+            mCache = cache;
+        }
+    }
+}
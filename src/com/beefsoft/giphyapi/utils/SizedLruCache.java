@@ -0,0 +1,109 @@
+package com.beefsoft.giphyapi.utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU cache limited by number of entries and by bytes, so it can be
+ * registered in the {@link MemoryGovernor}. The least recently used entries
+ * are removed first.
+ * <p>
+ * All the methods are synchronized on the cache, so several operations can
+ * be done atomically synchronizing on it too.
+ *
+ * @author Marcos Trujillo
+ */
+public abstract class SizedLruCache<K, V> implements MemoryGovernor.TrimmableCache {
+    private final LinkedHashMap<K, V> mMap;
+    private final int mMaxEntries;
+    private long mSize = 0;
+    private long mMaxSize = Long.MAX_VALUE;
+
+    /**
+     * @param maxEntries max number of entries, whatever their size
+     */
+    protected SizedLruCache(int maxEntries) {
+        if (maxEntries <= 0)
+            throw new IllegalArgumentException("maxEntries must be positive");
+
+        mMaxEntries = maxEntries;
+        mMap = new LinkedHashMap<K, V>(Math.min(maxEntries, 64), 0.75f, true);
+    }
+
+    /**
+     * Approximate bytes retained by the entry. Must return always the same
+     * value for the same entry.
+     */
+    protected abstract long sizeOf(K key, V value);
+
+    /**
+     * Returns the value and marks it as the most recently used
+     *
+     * @param key
+     * @return the value or null if not cached
+     */
+    public synchronized V get(K key) {
+        return mMap.get(key);
+    }
+
+    /**
+     * Caches the value, removing the least recently used entries if the cache
+     * is full
+     *
+     * @param key
+     * @param value
+     * @return the previous value of the key, if any
+     */
+    public synchronized V put(K key, V value) {
+        V previous = mMap.put(key, value);
+        mSize += sizeOf(key, value);
+        if (previous != null)
+            mSize -= sizeOf(key, previous);
+        trim(mMaxSize);
+        return previous;
+    }
+
+    public synchronized V remove(K key) {
+        V previous = mMap.remove(key);
+        if (previous != null)
+            mSize -= sizeOf(key, previous);
+        return previous;
+    }
+
+    /**
+     * Number of entries
+     */
+    public synchronized int count() {
+        return mMap.size();
+    }
+
+    @Override
+    public synchronized long getSize() {
+        return mSize;
+    }
+
+    public synchronized long getMaxSize() {
+        return mMaxSize;
+    }
+
+    @Override
+    public synchronized void setMaxSize(long maxSize) {
+        mMaxSize = maxSize;
+        trim(maxSize);
+    }
+
+    @Override
+    public synchronized void trimToSize(long maxSize) {
+        trim(maxSize);
+    }
+
+    private void trim(long maxSize) {
+        Iterator<Map.Entry<K, V>> iterator = mMap.entrySet().iterator();
+        while ((mSize > maxSize || mMap.size() > mMaxEntries) && iterator.hasNext()) {
+            Map.Entry<K, V> eldest = iterator.next();
+            mSize -= sizeOf(eldest.getKey(), eldest.getValue());
+            iterator.remove();
+        }
+    }
+}